@@ -0,0 +1,71 @@
+package uk.humbkr.jmpc.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.service.MpdService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * Serves a synthetic library from an in-process {@link FakeMpdServer}, for local benchmarks and tests
+ * without Docker or a real MPD. Only on the classpath of the {@code jmh} and {@code loadtest} profiles,
+ * which enable it with {@code mpd.fake.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "mpd.fake.enabled", havingValue = "true")
+@Slf4j
+public class FakeMpdConfig {
+
+    @Value("${mpd.fake.port:0}")
+    private int port;
+
+    @Value("${mpd.fake.library-size:10000}")
+    private int librarySize;
+
+    @Value("${mpd.fake.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${mpd.fake.fault-rate:0}")
+    private double faultRate;
+
+    @Autowired
+    private MpdService mpdService;
+
+    private FakeMpdServer fakeMpdServer;
+
+    @PostConstruct
+    public void startFakeMpd() {
+        try {
+            fakeMpdServer = FakeMpdServer.start(port, SyntheticLibrary.generate(librarySize),
+                    Duration.ofMillis(latencyMs), faultRate);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the fake MPD on port " + port, e);
+        }
+
+        mpdService.updateConnectionInfo(fakeMpdServer.getHost(), fakeMpdServer.getPort());
+
+        log.info("Fake MPD started at {}:{} ({} ms latency, {} fault rate)",
+                fakeMpdServer.getHost(), fakeMpdServer.getPort(), latencyMs, faultRate);
+    }
+
+    @PreDestroy
+    public void stopFakeMpd() {
+        if (fakeMpdServer != null) {
+            fakeMpdServer.close();
+        }
+    }
+
+    public FakeMpdServer getFakeMpdServer() {
+        return fakeMpdServer;
+    }
+
+}
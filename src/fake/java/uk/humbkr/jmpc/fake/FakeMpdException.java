@@ -0,0 +1,25 @@
+package uk.humbkr.jmpc.fake;
+
+/**
+ * A command error the {@link FakeMpdServer} reports as {@code ACK [code@index] {command} message}.
+ */
+class FakeMpdException extends Exception {
+
+    static final int ARG = 2;
+
+    static final int UNKNOWN = 5;
+
+    static final int NO_EXIST = 50;
+
+    private final int code;
+
+    FakeMpdException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+}
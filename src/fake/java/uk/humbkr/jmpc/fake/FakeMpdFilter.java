@@ -0,0 +1,188 @@
+package uk.humbkr.jmpc.fake;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Parser for the subset of MPD filter expressions jmpc sends: {@code (TAG == 'v')},
+ * {@code (TAG != 'v')}, {@code (TAG contains 'v')}, {@code (TAG starts_with 'v')}, {@code (base 'v')},
+ * {@code (modified-since 'v')}, {@code (!EXPR)} and {@code (EXPR AND EXPR …)}. Tags are
+ * {@code artist}, {@code album}, {@code title}, {@code genre}, {@code file} and {@code any};
+ * every song counts as modified at startup.
+ */
+final class FakeMpdFilter {
+
+    private final String expression;
+
+    private final boolean foldCase;
+
+    private int position;
+
+    private FakeMpdFilter(String expression, boolean foldCase) {
+        this.expression = expression;
+        this.foldCase = foldCase;
+    }
+
+    /**
+     * @param foldCase whether values compare ignoring case, as for {@code search}
+     */
+    static Predicate<MPDSong> parse(String expression, boolean foldCase) throws FakeMpdException {
+        FakeMpdFilter parser = new FakeMpdFilter(expression, foldCase);
+        Predicate<MPDSong> filter = parser.expression();
+        parser.skipWhitespace();
+        if (parser.position != expression.length()) {
+            throw parser.error("Unparsed garbage after expression");
+        }
+        return filter;
+    }
+
+    private Predicate<MPDSong> expression() throws FakeMpdException {
+        expect('(');
+        skipWhitespace();
+
+        if (peek() == '!') {
+            position++;
+            Predicate<MPDSong> negated = expression().negate();
+            expect(')');
+            return negated;
+        }
+
+        if (peek() == '(') {
+            List<Predicate<MPDSong>> operands = new ArrayList<>();
+            operands.add(expression());
+            skipWhitespace();
+            while (peek() != ')') {
+                if (!"AND".equals(word())) {
+                    throw error("'AND' expected");
+                }
+                operands.add(expression());
+                skipWhitespace();
+            }
+            position++;
+            return song -> operands.stream().allMatch(operand -> operand.test(song));
+        }
+
+        String name = word();
+        Predicate<MPDSong> filter = switch (name) {
+            case "base" -> {
+                String base = value();
+                yield song -> song.getFile().startsWith(base + "/");
+            }
+            case "modified-since" -> {
+                value();
+                yield song -> true;
+            }
+            default -> comparison(tag(name));
+        };
+        expect(')');
+        return filter;
+    }
+
+    private Predicate<MPDSong> comparison(Function<MPDSong, List<String>> tag) throws FakeMpdException {
+        String operator = word();
+        String value = fold(value());
+        Predicate<String> matches = switch (operator) {
+            case "==", "!=" -> value::equals;
+            case "contains" -> candidate -> candidate.contains(value);
+            case "starts_with" -> candidate -> candidate.startsWith(value);
+            default -> throw error("Unknown filter operator: " + operator);
+        };
+        Predicate<MPDSong> filter = song -> tag.apply(song).stream()
+                .anyMatch(candidate -> candidate != null && matches.test(fold(candidate)));
+        return "!=".equals(operator) ? filter.negate() : filter;
+    }
+
+    private Function<MPDSong, List<String>> tag(String name) throws FakeMpdException {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "artist" -> song -> tags(song.getArtistName());
+            case "album" -> song -> tags(song.getAlbumName());
+            case "title" -> song -> tags(song.getTitle());
+            case "genre" -> song -> tags(song.getGenre());
+            case "file" -> song -> tags(song.getFile());
+            case "any" -> song -> tags(song.getArtistName(), song.getAlbumName(), song.getTitle(), song.getGenre());
+            default -> throw error("Unknown filter type: " + name);
+        };
+    }
+
+    private static List<String> tags(String... values) {
+        List<String> tags = new ArrayList<>(values.length);
+        for (String value : values) {
+            if (value != null) {
+                tags.add(value);
+            }
+        }
+        return tags;
+    }
+
+    private String fold(String value) {
+        return foldCase ? value.toLowerCase(Locale.ROOT) : value;
+    }
+
+    private String word() throws FakeMpdException {
+        skipWhitespace();
+        int start = position;
+        while (position < expression.length()
+                && !Character.isWhitespace(expression.charAt(position))
+                && expression.charAt(position) != ')'
+                && expression.charAt(position) != '\''
+                && expression.charAt(position) != '"') {
+            position++;
+        }
+        if (start == position) {
+            throw error("Word expected");
+        }
+        return expression.substring(start, position);
+    }
+
+    private String value() throws FakeMpdException {
+        skipWhitespace();
+        char quote = peek();
+        if (quote != '\'' && quote != '"') {
+            throw error("Quoted string expected");
+        }
+        position++;
+        StringBuilder value = new StringBuilder();
+        while (position < expression.length() && expression.charAt(position) != quote) {
+            if (expression.charAt(position) == '\\' && position + 1 < expression.length()) {
+                position++;
+            }
+            value.append(expression.charAt(position++));
+        }
+        if (position >= expression.length()) {
+            throw error("Closing quote not found");
+        }
+        position++;
+        return value.toString();
+    }
+
+    private void expect(char c) throws FakeMpdException {
+        skipWhitespace();
+        if (peek() != c) {
+            throw error("'" + c + "' expected");
+        }
+        position++;
+    }
+
+    private char peek() throws FakeMpdException {
+        if (position >= expression.length()) {
+            throw error("Unexpected end of expression");
+        }
+        return expression.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private FakeMpdException error(String message) {
+        return new FakeMpdException(FakeMpdException.ARG, message);
+    }
+
+}
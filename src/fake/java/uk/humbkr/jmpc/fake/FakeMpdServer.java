@@ -0,0 +1,550 @@
+package uk.humbkr.jmpc.fake;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.song.MPDSong;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * An in-process stand-in for MPD, speaking enough of the text protocol for jmpc: status, playback,
+ * the queue, the music database and its filter searches, {@code idle} and command lists. It serves a library, usually
+ * from {@link SyntheticLibrary}, whose files are fixed but can be {@link #updateSong retagged}, and plays
+ * songs on a simulated clock.
+ * <p>
+ * Every request (a command or a whole command list) can be delayed by a fixed latency, and fails with
+ * the given probability, either with an {@code ACK} or by dropping the connection, so clients can be
+ * benchmarked and tested against a slow or flaky server without Docker or a real daemon.
+ */
+@Slf4j
+public class FakeMpdServer implements Closeable {
+
+    private static final String GREETING = "OK MPD 0.23.5";
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final long CLOCK_PERIOD_MILLIS = 250;
+
+    private final ServerSocket serverSocket;
+
+    private final FakeMpdState state;
+
+    private final long latencyMillis;
+
+    private final double faultRate;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fake-mpd-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean closed;
+
+    private FakeMpdServer(ServerSocket serverSocket, List<MPDSong> library, Duration latency, double faultRate) {
+        this.serverSocket = serverSocket;
+        this.state = new FakeMpdState(library, this::publish);
+        this.latencyMillis = latency.toMillis();
+        this.faultRate = faultRate;
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port      the port to listen on, 0 for any free port
+     * @param latency   delay added to every request
+     * @param faultRate probability, from 0 to 1, that a request fails
+     */
+    public static FakeMpdServer start(int port, List<MPDSong> library, Duration latency, double faultRate)
+            throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        FakeMpdServer server = new FakeMpdServer(serverSocket, library, latency, faultRate);
+        Thread.ofPlatform().name("fake-mpd-accept").daemon(true).start(server::accept);
+        server.clock.scheduleAtFixedRate(server::tick, CLOCK_PERIOD_MILLIS, CLOCK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        log.info("Fake MPD listening on port {} with {} songs", server.getPort(), library.size());
+        return server;
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Commands received since start, counting each command of a command list.
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * Connections accepted since start.
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getOpenConnectionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Retags the library song with the same file, as if it had been edited and the database updated.
+     */
+    public void updateSong(MPDSong song) {
+        state.updateSong(song);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        clock.shutdownNow();
+        closeQuietly(serverSocket);
+        sessions.forEach(session -> closeQuietly(session.socket));
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                Session session = new Session(socket);
+                sessions.add(session);
+                Thread.ofVirtual().name("fake-mpd-session").start(() -> serve(session));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Fake MPD stopped accepting connections", e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            state.tick();
+        } catch (Exception e) {
+            log.warn("Fake MPD clock failed", e);
+        }
+    }
+
+    private void publish(String subsystem) {
+        sessions.forEach(session -> session.changed(subsystem));
+    }
+
+    private void serve(Session session) {
+        try (Socket socket = session.socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            write(out, List.of(GREETING));
+
+            String line;
+            while (!closed && (line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String name = commandName(line);
+                if (name.equals("close")) {
+                    return;
+                }
+                if (name.equals("noidle")) {
+                    // Like MPD, ignored outside of idle
+                    continue;
+                }
+
+                boolean list = name.startsWith("command_list");
+                List<String> commands = list ? readCommandList(in, line) : List.of(line);
+                if (!injectLatencyAndFaults(out, name)) {
+                    return;
+                }
+                if (name.equals("idle")) {
+                    commandCount.incrementAndGet();
+                    idle(session, line, in, out);
+                } else {
+                    write(out, respond(commands, list, name.equals("command_list_ok_begin")));
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Fake MPD connection closed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sessions.remove(session);
+        }
+    }
+
+    private List<String> readCommandList(BufferedReader in, String begin) throws IOException {
+        List<String> commands = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("command_list_end")) {
+            commands.add(line);
+        }
+        if (line == null) {
+            throw new IOException("Connection closed inside " + begin);
+        }
+        return commands;
+    }
+
+    /**
+     * @return false if the connection should be dropped
+     */
+    private boolean injectLatencyAndFaults(OutputStream out, String name) throws IOException, InterruptedException {
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+        if (faultRate <= 0 || ThreadLocalRandom.current().nextDouble() >= faultRate) {
+            return true;
+        }
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            return false;
+        }
+        write(out, List.of(ack(FakeMpdException.UNKNOWN, 0, name, "Injected fault")));
+        return true;
+    }
+
+    private List<String> respond(List<String> commands, boolean list, boolean listOk) {
+        List<String> response = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            String command = commands.get(i);
+            commandCount.incrementAndGet();
+            try {
+                response.addAll(dispatch(tokenize(command)));
+            } catch (FakeMpdException e) {
+                response.add(ack(e.getCode(), list ? i : 0, commandName(command), e.getMessage()));
+                return response;
+            }
+            if (list && listOk) {
+                response.add("list_OK");
+            }
+        }
+        response.add("OK");
+        return response;
+    }
+
+    private void idle(Session session, String line, BufferedReader in, OutputStream out)
+            throws IOException, InterruptedException {
+        List<String> arguments;
+        try {
+            arguments = tokenize(line);
+        } catch (FakeMpdException e) {
+            write(out, List.of(ack(e.getCode(), 0, "idle", e.getMessage())));
+            return;
+        }
+        Set<String> subsystems = new LinkedHashSet<>(arguments.subList(1, arguments.size()));
+
+        while (!closed) {
+            List<String> changed = session.takeChanges(subsystems, IDLE_POLL_MILLIS);
+            if (!changed.isEmpty()) {
+                List<String> response = new ArrayList<>();
+                changed.forEach(subsystem -> response.add("changed: " + subsystem));
+                response.add("OK");
+                write(out, response);
+                return;
+            }
+            if (in.ready()) {
+                String next = in.readLine();
+                if (next == null) {
+                    throw new IOException("Connection closed while idle");
+                }
+                // noidle, or anything else the client sends, ends the idle without changes
+                write(out, List.of("OK"));
+                return;
+            }
+        }
+    }
+
+    private List<String> dispatch(List<String> arguments) throws FakeMpdException {
+        String name = arguments.getFirst();
+        return switch (name) {
+            case "ping" -> List.of();
+            case "status" -> state.status();
+            case "stats" -> state.stats();
+            case "currentsong" -> state.currentSong();
+            case "listallinfo" -> state.listAllInfo(optional(arguments, 1, ""));
+            case "lsinfo" -> state.lsInfo(optional(arguments, 1, ""));
+            case "search", "find" -> {
+                Predicate<MPDSong> filter = FakeMpdFilter.parse(required(arguments, 1), "search".equals(name));
+                int[] window = window(arguments);
+                yield state.search(filter, window[0], window[1]);
+            }
+            case "count", "searchcount" ->
+                    state.count(FakeMpdFilter.parse(required(arguments, 1), "searchcount".equals(name)));
+            case "searchadd", "findadd" -> {
+                state.addMatching(FakeMpdFilter.parse(required(arguments, 1), "searchadd".equals(name)));
+                yield List.of();
+            }
+            case "playlistinfo" -> {
+                if (arguments.size() < 2) {
+                    yield state.playlistInfo(0, state.queueLength());
+                }
+                int[] range = range(arguments.get(1));
+                yield state.playlistInfo(range[0], range[1]);
+            }
+            case "playlistid" -> arguments.size() < 2
+                    ? state.playlistInfo(0, state.queueLength())
+                    : state.playlistId(integer(arguments, 1));
+            case "plchanges" -> state.playlistChanges(integer(arguments, 1), false);
+            case "plchangesposid" -> state.playlistChanges(integer(arguments, 1), true);
+            case "add" -> {
+                state.add(required(arguments, 1));
+                yield List.of();
+            }
+            case "addid" -> {
+                int position = arguments.size() > 2 ? integer(arguments, 2) : -1;
+                yield List.of("Id: " + state.addId(required(arguments, 1), position));
+            }
+            case "delete" -> {
+                int[] range = range(required(arguments, 1));
+                state.delete(range[0], range[1]);
+                yield List.of();
+            }
+            case "deleteid" -> {
+                state.deleteId(integer(arguments, 1));
+                yield List.of();
+            }
+            case "clear" -> {
+                state.clear();
+                yield List.of();
+            }
+            case "move" -> {
+                int[] range = range(required(arguments, 1));
+                state.move(range[0], range[1], integer(arguments, 2));
+                yield List.of();
+            }
+            case "moveid" -> {
+                state.moveId(integer(arguments, 1), integer(arguments, 2));
+                yield List.of();
+            }
+            case "play" -> {
+                state.play(arguments.size() > 1 ? integer(arguments, 1) : -1);
+                yield List.of();
+            }
+            case "playid" -> {
+                state.playId(arguments.size() > 1 ? integer(arguments, 1) : -1);
+                yield List.of();
+            }
+            case "pause" -> {
+                state.pause(arguments.size() > 1 ? integer(arguments, 1) != 0 : null);
+                yield List.of();
+            }
+            case "stop" -> {
+                state.stop();
+                yield List.of();
+            }
+            case "next" -> {
+                state.next();
+                yield List.of();
+            }
+            case "previous" -> {
+                state.previous();
+                yield List.of();
+            }
+            case "setvol" -> {
+                state.setVolume(integer(arguments, 1));
+                yield List.of();
+            }
+            case "seekcur" -> {
+                String time = required(arguments, 1);
+                boolean relative = time.startsWith("+") || time.startsWith("-");
+                state.seekCurrent(number(time), relative);
+                yield List.of();
+            }
+            default -> throw new FakeMpdException(FakeMpdException.UNKNOWN, "unknown command \"" + name + "\"");
+        };
+    }
+
+    /**
+     * Splits a command line into its name and arguments, unquoting {@code "…"} arguments.
+     */
+    static List<String> tokenize(String line) throws FakeMpdException {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                StringBuilder token = new StringBuilder();
+                i++;
+                while (i < line.length() && line.charAt(i) != '"') {
+                    if (line.charAt(i) == '\\' && i + 1 < line.length()) {
+                        i++;
+                    }
+                    token.append(line.charAt(i++));
+                }
+                if (i >= line.length()) {
+                    throw new FakeMpdException(FakeMpdException.ARG, "Missing closing '\"'");
+                }
+                tokens.add(token.toString());
+                i++;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                tokens.add(line.substring(start, i));
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new FakeMpdException(FakeMpdException.UNKNOWN, "No command given");
+        }
+        return tokens;
+    }
+
+    private static String commandName(String line) {
+        String trimmed = line.strip();
+        int space = trimmed.indexOf(' ');
+        return space < 0 ? trimmed : trimmed.substring(0, space);
+    }
+
+    private static String ack(int code, int index, String command, String message) {
+        return "ACK [" + code + "@" + index + "] {" + command + "} " + message;
+    }
+
+    private static String optional(List<String> arguments, int index, String fallback) {
+        return arguments.size() > index ? arguments.get(index) : fallback;
+    }
+
+    private static String required(List<String> arguments, int index) throws FakeMpdException {
+        if (arguments.size() <= index) {
+            throw new FakeMpdException(FakeMpdException.ARG, "wrong number of arguments for \"" + arguments.getFirst() + "\"");
+        }
+        return arguments.get(index);
+    }
+
+    private static int integer(List<String> arguments, int index) throws FakeMpdException {
+        String value = required(arguments, index);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Integer expected: " + value);
+        }
+    }
+
+    private static double number(String value) throws FakeMpdException {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Number expected: " + value);
+        }
+    }
+
+    /**
+     * Parses {@code pos}, {@code start:end} or the open-ended {@code start:} into {start, end}.
+     */
+    private static int[] range(String value) throws FakeMpdException {
+        try {
+            int colon = value.indexOf(':');
+            if (colon < 0) {
+                int position = Integer.parseInt(value);
+                return new int[]{position, position + 1};
+            }
+            int start = Integer.parseInt(value.substring(0, colon));
+            String end = value.substring(colon + 1);
+            return new int[]{start, end.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(end)};
+        } catch (NumberFormatException e) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad range: " + value);
+        }
+    }
+
+    /**
+     * The {@code window start:end} of a search, or everything.
+     */
+    private static int[] window(List<String> arguments) throws FakeMpdException {
+        if (arguments.size() < 3) {
+            return new int[]{0, Integer.MAX_VALUE};
+        }
+        if (!"window".equals(arguments.get(2))) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Unsupported argument: " + arguments.get(2));
+        }
+        return range(required(arguments, 3));
+    }
+
+    private static void write(OutputStream out, List<String> lines) throws IOException {
+        StringBuilder response = new StringBuilder();
+        lines.forEach(line -> response.append(line).append('\n'));
+        out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+
+    /**
+     * One client connection and the subsystems changed since its last {@code idle}.
+     */
+    private static final class Session {
+
+        private final Socket socket;
+
+        private final Set<String> pendingChanges = new LinkedHashSet<>();
+
+        private Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        private synchronized void changed(String subsystem) {
+            pendingChanges.add(subsystem);
+            notifyAll();
+        }
+
+        /**
+         * Waits up to {@code timeoutMillis} for changes to the subsystems, or to any if none are given.
+         */
+        private synchronized List<String> takeChanges(Set<String> subsystems, long timeoutMillis)
+                throws InterruptedException {
+            List<String> changed = matching(subsystems);
+            if (changed.isEmpty()) {
+                wait(timeoutMillis);
+                changed = matching(subsystems);
+            }
+            changed.forEach(pendingChanges::remove);
+            return changed;
+        }
+
+        private List<String> matching(Set<String> subsystems) {
+            List<String> changed = new ArrayList<>();
+            for (String subsystem : pendingChanges) {
+                if (subsystems.isEmpty() || subsystems.contains(subsystem)) {
+                    changed.add(subsystem);
+                }
+            }
+            return changed;
+        }
+
+    }
+
+}
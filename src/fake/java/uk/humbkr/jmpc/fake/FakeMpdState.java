@@ -0,0 +1,589 @@
+package uk.humbkr.jmpc.fake;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Library, queue and player of the {@link FakeMpdServer}, guarded by the instance lock.
+ * Every change is reported to the listener with the name of the affected idle subsystem.
+ */
+final class FakeMpdState {
+
+    private static final String ROOT = "";
+
+    private final List<MPDSong> library;
+
+    private final Map<String, MPDSong> songsByFile = new HashMap<>();
+
+    private final Map<String, TreeSet<String>> subdirectories = new TreeMap<>();
+
+    private final Map<String, List<MPDSong>> songsByDirectory = new HashMap<>();
+
+    private long databaseUpdate;
+
+    private final String lastModified;
+
+    private final long startedAt = System.nanoTime();
+
+    private final Consumer<String> changeListener;
+
+    private final List<QueueEntry> queue = new ArrayList<>();
+
+    private int playlistVersion = 1;
+
+    private int nextId = 1;
+
+    private String state = "stop";
+
+    // Queue position of the current song, -1 if none
+    private int current = -1;
+
+    // Elapsed time at resumedAt, advanced by the clock while playing
+    private long elapsedMillis;
+
+    private long resumedAt;
+
+    private int volume = 50;
+
+    FakeMpdState(List<MPDSong> library, Consumer<String> changeListener) {
+        this.library = new ArrayList<>(library);
+        this.changeListener = changeListener;
+
+        Instant now = Instant.now();
+        this.databaseUpdate = now.getEpochSecond();
+        this.lastModified = now.toString();
+
+        subdirectories.put(ROOT, new TreeSet<>());
+        for (MPDSong song : this.library) {
+            songsByFile.put(song.getFile(), song);
+            String directory = parentOf(song.getFile());
+            songsByDirectory.computeIfAbsent(directory, key -> new ArrayList<>()).add(song);
+            registerDirectory(directory);
+        }
+    }
+
+    // Status
+
+    synchronized List<String> status() {
+        List<String> lines = new ArrayList<>();
+        lines.add("volume: " + volume);
+        lines.add("repeat: 0");
+        lines.add("random: 0");
+        lines.add("single: 0");
+        lines.add("consume: 0");
+        lines.add("playlist: " + playlistVersion);
+        lines.add("playlistlength: " + queue.size());
+        lines.add("state: " + state);
+        if (current >= 0) {
+            QueueEntry entry = queue.get(current);
+            long elapsed = elapsedMillis();
+            lines.add("song: " + current);
+            lines.add("songid: " + entry.id);
+            lines.add("time: " + elapsed / 1000 + ":" + entry.song.getLength());
+            lines.add("elapsed: " + seconds(elapsed));
+            lines.add("duration: " + seconds(entry.song.getLength() * 1000L));
+        }
+        return lines;
+    }
+
+    synchronized List<String> stats() {
+        long playtime = 0;
+        TreeSet<String> artists = new TreeSet<>();
+        TreeSet<String> albums = new TreeSet<>();
+        for (MPDSong song : library) {
+            playtime += song.getLength();
+            if (song.getArtistName() != null) {
+                artists.add(song.getArtistName());
+            }
+            if (song.getAlbumName() != null) {
+                albums.add(song.getAlbumName());
+            }
+        }
+        return List.of(
+                "artists: " + artists.size(),
+                "albums: " + albums.size(),
+                "songs: " + library.size(),
+                "uptime: " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt),
+                "playtime: 0",
+                "db_playtime: " + playtime,
+                "db_update: " + databaseUpdate);
+    }
+
+    synchronized List<String> currentSong() {
+        List<String> lines = new ArrayList<>();
+        if (current >= 0) {
+            appendEntry(lines, current);
+        }
+        return lines;
+    }
+
+    // Music database
+
+    synchronized List<String> listAllInfo(String path) throws FakeMpdException {
+        List<String> lines = new ArrayList<>();
+        MPDSong song = songsByFile.get(path);
+        if (song != null) {
+            appendSong(lines, song);
+            return lines;
+        }
+        requireDirectory(path);
+        appendTree(lines, path);
+        return lines;
+    }
+
+    synchronized List<String> lsInfo(String path) throws FakeMpdException {
+        List<String> lines = new ArrayList<>();
+        MPDSong song = songsByFile.get(path);
+        if (song != null) {
+            appendSong(lines, song);
+            return lines;
+        }
+        requireDirectory(path);
+        for (String child : subdirectories.getOrDefault(path, new TreeSet<>())) {
+            lines.add("directory: " + child);
+            lines.add("Last-Modified: " + lastModified);
+        }
+        songsByDirectory.getOrDefault(path, List.of()).forEach(child -> appendSong(lines, child));
+        return lines;
+    }
+
+    /**
+     * Songs {@code start} to {@code end} of those matching, in database order.
+     */
+    synchronized List<String> search(Predicate<MPDSong> filter, int start, int end) {
+        List<String> lines = new ArrayList<>();
+        int matched = 0;
+        for (MPDSong song : library) {
+            if (filter.test(song)) {
+                if (matched >= start && matched < end) {
+                    appendSong(lines, song);
+                }
+                matched++;
+            }
+        }
+        return lines;
+    }
+
+    synchronized List<String> count(Predicate<MPDSong> filter) {
+        int songs = 0;
+        long playtime = 0;
+        for (MPDSong song : library) {
+            if (filter.test(song)) {
+                songs++;
+                playtime += song.getLength();
+            }
+        }
+        return List.of("songs: " + songs, "playtime: " + playtime);
+    }
+
+    /**
+     * Replaces the tags of a song in place, as {@code mpd update} does for a retagged file: the database
+     * version advances but the stamp of the song's directory does not. Queue entries of the song are
+     * changed too, as MPD does.
+     */
+    synchronized void updateSong(MPDSong song) {
+        MPDSong previous = songsByFile.get(song.getFile());
+        if (previous == null) {
+            throw new IllegalArgumentException("No such song: " + song.getFile());
+        }
+        library.set(library.indexOf(previous), song);
+        songsByFile.put(song.getFile(), song);
+        List<MPDSong> siblings = songsByDirectory.get(parentOf(song.getFile()));
+        siblings.set(siblings.indexOf(previous), song);
+        databaseUpdate = Math.max(databaseUpdate + 1, Instant.now().getEpochSecond());
+        changeListener.accept("database");
+
+        boolean queued = false;
+        for (QueueEntry entry : queue) {
+            if (entry.song == previous) {
+                if (!queued) {
+                    playlistVersion++;
+                    queued = true;
+                }
+                entry.song = song;
+                entry.version = playlistVersion;
+            }
+        }
+        if (queued) {
+            changeListener.accept("playlist");
+        }
+    }
+
+    /**
+     * Appends every matching song to the queue.
+     */
+    synchronized void addMatching(Predicate<MPDSong> filter) {
+        int start = queue.size();
+        for (MPDSong song : library) {
+            if (filter.test(song)) {
+                queue.add(new QueueEntry(nextId++, song));
+            }
+        }
+        if (queue.size() > start) {
+            queueChanged(start, queue.size());
+        }
+    }
+
+    // Queue
+
+    synchronized List<String> playlistInfo(int start, int end) throws FakeMpdException {
+        checkRange(start, end);
+        List<String> lines = new ArrayList<>();
+        for (int position = start; position < Math.min(end, queue.size()); position++) {
+            appendEntry(lines, position);
+        }
+        return lines;
+    }
+
+    synchronized List<String> playlistId(int id) throws FakeMpdException {
+        List<String> lines = new ArrayList<>();
+        appendEntry(lines, positionOf(id));
+        return lines;
+    }
+
+    /**
+     * Positions changed since {@code version}, with all tags or only position and id.
+     */
+    synchronized List<String> playlistChanges(int version, boolean positionsAndIdsOnly) {
+        List<String> lines = new ArrayList<>();
+        for (int position = 0; position < queue.size(); position++) {
+            QueueEntry entry = queue.get(position);
+            if (entry.version <= version) {
+                continue;
+            }
+            if (positionsAndIdsOnly) {
+                lines.add("cpos: " + position);
+                lines.add("Id: " + entry.id);
+            } else {
+                appendEntry(lines, position);
+            }
+        }
+        return lines;
+    }
+
+    synchronized int queueLength() {
+        return queue.size();
+    }
+
+    /**
+     * Adds a song, or every song below a directory, to the end of the queue.
+     */
+    synchronized void add(String uri) throws FakeMpdException {
+        List<MPDSong> songs = resolve(uri);
+        int start = queue.size();
+        for (MPDSong song : songs) {
+            queue.add(new QueueEntry(nextId++, song));
+        }
+        queueChanged(start, queue.size());
+    }
+
+    synchronized int addId(String uri, int position) throws FakeMpdException {
+        MPDSong song = songsByFile.get(uri);
+        if (song == null) {
+            throw new FakeMpdException(FakeMpdException.NO_EXIST, "No such song");
+        }
+        int at = position < 0 ? queue.size() : position;
+        if (at > queue.size()) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad song index");
+        }
+        QueueEntry entry = new QueueEntry(nextId++, song);
+        queue.add(at, entry);
+        if (current >= at) {
+            current++;
+        }
+        queueChanged(at, queue.size());
+        return entry.id;
+    }
+
+    synchronized void delete(int start, int end) throws FakeMpdException {
+        int to = Math.min(end, queue.size());
+        if (start < 0 || start >= to) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad song index");
+        }
+        queue.subList(start, to).clear();
+        if (current >= to) {
+            current -= to - start;
+        } else if (current >= start) {
+            stopPlayback();
+        }
+        queueChanged(start, queue.size());
+    }
+
+    synchronized void deleteId(int id) throws FakeMpdException {
+        int position = positionOf(id);
+        delete(position, position + 1);
+    }
+
+    synchronized void clear() {
+        queue.clear();
+        stopPlayback();
+        queueChanged(0, 0);
+    }
+
+    synchronized void move(int start, int end, int to) throws FakeMpdException {
+        int count = end - start;
+        if (start < 0 || count <= 0 || end > queue.size() || to < 0 || to + count > queue.size()) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad song index");
+        }
+        QueueEntry currentEntry = current >= 0 ? queue.get(current) : null;
+        List<QueueEntry> moved = new ArrayList<>(queue.subList(start, end));
+        queue.subList(start, end).clear();
+        queue.addAll(to, moved);
+        if (currentEntry != null) {
+            current = queue.indexOf(currentEntry);
+        }
+        queueChanged(Math.min(start, to), Math.max(end, to + count));
+    }
+
+    synchronized void moveId(int id, int to) throws FakeMpdException {
+        int position = positionOf(id);
+        move(position, position + 1, to);
+    }
+
+    // Playback
+
+    synchronized void play(int position) throws FakeMpdException {
+        if (position < 0) {
+            if ("pause".equals(state)) {
+                pause(false);
+                return;
+            }
+            position = current >= 0 ? current : 0;
+        }
+        if (position >= queue.size()) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad song index");
+        }
+        current = position;
+        elapsedMillis = 0;
+        resumedAt = System.nanoTime();
+        state = "play";
+        changeListener.accept("player");
+    }
+
+    synchronized void playId(int id) throws FakeMpdException {
+        play(id < 0 ? -1 : positionOf(id));
+    }
+
+    /**
+     * @param pause {@code null} toggles
+     */
+    synchronized void pause(Boolean pause) {
+        if (current < 0 || "stop".equals(state)) {
+            return;
+        }
+        boolean pausing = pause != null ? pause : "play".equals(state);
+        if (pausing && "play".equals(state)) {
+            elapsedMillis = elapsedMillis();
+            state = "pause";
+            changeListener.accept("player");
+        } else if (!pausing && "pause".equals(state)) {
+            resumedAt = System.nanoTime();
+            state = "play";
+            changeListener.accept("player");
+        }
+    }
+
+    synchronized void stop() {
+        if (!"stop".equals(state)) {
+            state = "stop";
+            elapsedMillis = 0;
+            changeListener.accept("player");
+        }
+    }
+
+    synchronized void next() throws FakeMpdException {
+        if (current >= 0 && current + 1 < queue.size() && !"stop".equals(state)) {
+            play(current + 1);
+        } else {
+            stop();
+        }
+    }
+
+    synchronized void previous() throws FakeMpdException {
+        if (current > 0 && !"stop".equals(state)) {
+            play(current - 1);
+        }
+    }
+
+    synchronized void setVolume(int volume) throws FakeMpdException {
+        if (volume < 0 || volume > 100) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Invalid volume value");
+        }
+        if (volume != this.volume) {
+            this.volume = volume;
+            changeListener.accept("mixer");
+        }
+    }
+
+    /**
+     * Seeks to an absolute time, or relative to the current one when {@code relative} is set.
+     */
+    synchronized void seekCurrent(double seconds, boolean relative) throws FakeMpdException {
+        if (current < 0 || "stop".equals(state)) {
+            throw new FakeMpdException(FakeMpdException.NO_EXIST, "Not playing");
+        }
+        long target = Math.round(seconds * 1000) + (relative ? elapsedMillis() : 0);
+        long duration = queue.get(current).song.getLength() * 1000L;
+        elapsedMillis = Math.max(0, Math.min(target, duration));
+        resumedAt = System.nanoTime();
+        changeListener.accept("player");
+    }
+
+    /**
+     * Moves on to the next song once the current one has played to its end.
+     */
+    synchronized void tick() throws FakeMpdException {
+        if ("play".equals(state) && elapsedMillis() >= queue.get(current).song.getLength() * 1000L) {
+            next();
+        }
+    }
+
+    private long elapsedMillis() {
+        if (!"play".equals(state)) {
+            return elapsedMillis;
+        }
+        return elapsedMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resumedAt);
+    }
+
+    private void stopPlayback() {
+        current = -1;
+        if (!"stop".equals(state)) {
+            state = "stop";
+            elapsedMillis = 0;
+            changeListener.accept("player");
+        }
+    }
+
+    /**
+     * Bumps the queue version and stamps the positions {@code start} to {@code end} with it, which is
+     * what {@code plchanges} reports.
+     */
+    private void queueChanged(int start, int end) {
+        playlistVersion++;
+        for (int position = start; position < Math.min(end, queue.size()); position++) {
+            queue.get(position).version = playlistVersion;
+        }
+        changeListener.accept("playlist");
+    }
+
+    private int positionOf(int id) throws FakeMpdException {
+        for (int position = 0; position < queue.size(); position++) {
+            if (queue.get(position).id == id) {
+                return position;
+            }
+        }
+        throw new FakeMpdException(FakeMpdException.NO_EXIST, "No such song");
+    }
+
+    private void checkRange(int start, int end) throws FakeMpdException {
+        if (start < 0 || end < start || (start > 0 && start >= queue.size())) {
+            throw new FakeMpdException(FakeMpdException.ARG, "Bad song index");
+        }
+    }
+
+    private List<MPDSong> resolve(String uri) throws FakeMpdException {
+        MPDSong song = songsByFile.get(uri);
+        if (song != null) {
+            return List.of(song);
+        }
+        requireDirectory(uri);
+        List<MPDSong> songs = new ArrayList<>();
+        collectSongs(uri, songs);
+        return songs;
+    }
+
+    private void collectSongs(String directory, List<MPDSong> songs) {
+        for (String child : subdirectories.getOrDefault(directory, new TreeSet<>())) {
+            collectSongs(child, songs);
+        }
+        songs.addAll(songsByDirectory.getOrDefault(directory, List.of()));
+    }
+
+    private void requireDirectory(String path) throws FakeMpdException {
+        if (!subdirectories.containsKey(path)) {
+            throw new FakeMpdException(FakeMpdException.NO_EXIST, "No such directory");
+        }
+    }
+
+    private void registerDirectory(String directory) {
+        while (!subdirectories.containsKey(directory)) {
+            subdirectories.put(directory, new TreeSet<>());
+            String parent = parentOf(directory);
+            subdirectories.computeIfAbsent(parent, key -> new TreeSet<>()).add(directory);
+            directory = parent;
+        }
+    }
+
+    private void appendTree(List<String> lines, String directory) {
+        for (String child : subdirectories.getOrDefault(directory, new TreeSet<>())) {
+            lines.add("directory: " + child);
+            lines.add("Last-Modified: " + lastModified);
+            appendTree(lines, child);
+        }
+        songsByDirectory.getOrDefault(directory, List.of()).forEach(song -> appendSong(lines, song));
+    }
+
+    private void appendEntry(List<String> lines, int position) {
+        QueueEntry entry = queue.get(position);
+        appendSong(lines, entry.song);
+        lines.add("Pos: " + position);
+        lines.add("Id: " + entry.id);
+    }
+
+    private void appendSong(List<String> lines, MPDSong song) {
+        lines.add("file: " + song.getFile());
+        lines.add("Last-Modified: " + lastModified);
+        appendTag(lines, "Title", song.getTitle());
+        appendTag(lines, "Artist", song.getArtistName());
+        appendTag(lines, "Album", song.getAlbumName());
+        appendTag(lines, "Genre", song.getGenre());
+        lines.add("Time: " + song.getLength());
+        lines.add("duration: " + seconds(song.getLength() * 1000L));
+    }
+
+    private static void appendTag(List<String> lines, String tag, String value) {
+        if (value != null) {
+            lines.add(tag + ": " + value);
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static String parentOf(String path) {
+        int separator = path.lastIndexOf('/');
+        return separator >= 0 ? path.substring(0, separator) : ROOT;
+    }
+
+    private static final class QueueEntry {
+
+        private final int id;
+
+        private MPDSong song;
+
+        // Queue version of the last change at this entry's position
+        private int version;
+
+        private QueueEntry(int id, MPDSong song) {
+            this.id = id;
+            this.song = song;
+        }
+
+    }
+
+}
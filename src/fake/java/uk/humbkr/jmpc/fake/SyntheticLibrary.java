@@ -0,0 +1,82 @@
+package uk.humbkr.jmpc.fake;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic libraries of any size, shaped like a real collection: artists with a handful of
+ * albums of about ten tracks, some accented names and a few songs without tags.
+ */
+public final class SyntheticLibrary {
+
+    private static final String[] WORDS = {
+            "love", "night", "blue", "fire", "river", "dream", "city", "heart", "gold", "rain",
+            "shadow", "light", "road", "summer", "ghost", "wild", "stone", "echo", "silver", "ocean",
+            "café", "señor", "über", "noël", "déjà", "crème", "naïve", "björk", "mötley", "søren"
+    };
+
+    private static final String[] GENRES = {"Rock", "Pop", "Jazz", "Electronic", "Classical", "Hip-Hop", "Folk", "Metal"};
+
+    private static final int ALBUMS_PER_ARTIST = 5;
+
+    private static final int TRACKS_PER_ALBUM = 10;
+
+    private SyntheticLibrary() {
+    }
+
+    public static List<MPDSong> generate(int size) {
+        return generate(size, 42);
+    }
+
+    public static List<MPDSong> generate(int size, long seed) {
+        Random random = new Random(seed);
+        List<MPDSong> songs = new ArrayList<>(size);
+
+        int artistCount = Math.max(1, size / (ALBUMS_PER_ARTIST * TRACKS_PER_ALBUM));
+        String[] artists = new String[artistCount];
+        for (int i = 0; i < artistCount; i++) {
+            artists[i] = capitalize(phrase(random, 1 + random.nextInt(2))) + " " + i;
+        }
+
+        for (int i = 0; i < size; i++) {
+            int track = i % TRACKS_PER_ALBUM + 1;
+            int album = i / TRACKS_PER_ALBUM;
+            String artist = artists[album / ALBUMS_PER_ARTIST % artistCount];
+            String albumName = capitalize(phrase(new Random(seed + album), 1 + album % 3)) + " " + album;
+            String title = capitalize(phrase(random, 1 + random.nextInt(4)));
+            String file = artist + "/" + albumName + "/" + String.format("%02d", track) + " - " + title + ".flac";
+
+            // Roughly one song in fifty is untagged, like stray files in a real library
+            boolean untagged = random.nextInt(50) == 0;
+            songs.add(MPDSong.builder()
+                    .file(file)
+                    .name(file.substring(file.lastIndexOf('/') + 1))
+                    .title(untagged ? null : title)
+                    .artistName(untagged ? null : artist)
+                    .albumName(untagged ? null : albumName)
+                    .genre(GENRES[album % GENRES.length])
+                    .length(60 + random.nextInt(540))
+                    .build());
+        }
+        return songs;
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                phrase.append(' ');
+            }
+            phrase.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return phrase.toString();
+    }
+
+    private static String capitalize(String value) {
+        return Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+
+}
@@ -0,0 +1,101 @@
+package uk.humbkr.jmpc.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.library.LibraryIndex;
+import uk.humbkr.jmpc.library.SongView;
+import uk.humbkr.jmpc.library.SortKey;
+import uk.humbkr.jmpc.library.SortOrders;
+import uk.humbkr.jmpc.ui.DurationFormat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-row work of the library grid: fetching a page from the index and running the column value providers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GridBenchmark {
+
+    // Rows the grid requests per page
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    private LibraryIndex index;
+
+    private int[] matches;
+
+    private int page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = LibraryIndex.build(SyntheticLibrary.generate(size));
+        matches = index.search("love");
+    }
+
+    @Benchmark
+    public void renderPage(Blackhole blackhole) {
+        int offset = nextOffset(index.size());
+        for (int row = offset; row < offset + PAGE_SIZE; row++) {
+            renderRow(index.song(row), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void renderFilteredPage(Blackhole blackhole) {
+        int offset = nextOffset(matches.length);
+        for (int row = offset; row < Math.min(matches.length, offset + PAGE_SIZE); row++) {
+            renderRow(index.song(matches[row]), blackhole);
+        }
+    }
+
+    /**
+     * A page of the whole library sorted by artist, read through the precomputed order.
+     */
+    @Benchmark
+    public void renderSortedPage(Blackhole blackhole) {
+        SortOrders orders = index.getSortOrders();
+        int offset = nextOffset(index.size());
+        for (int row = offset; row < offset + PAGE_SIZE; row++) {
+            renderRow(index.song(orders.ordinalAt(SortKey.ARTIST, true, row)), blackhole);
+        }
+    }
+
+    @Benchmark
+    public String formatDuration() {
+        page++;
+        return DurationFormat.format(page % 3600);
+    }
+
+    private int nextOffset(int rows) {
+        page++;
+        return rows <= PAGE_SIZE ? 0 : (int) ((page * 7919L) % (rows - PAGE_SIZE));
+    }
+
+    private static void renderRow(SongView song, Blackhole blackhole) {
+        // Same value providers as the library grid's columns
+        blackhole.consume(song.getDisplayTitle());
+        blackhole.consume(song.getArtistName());
+        blackhole.consume(song.getAlbumName());
+        blackhole.consume(DurationFormat.format(song.getLength()));
+    }
+
+}
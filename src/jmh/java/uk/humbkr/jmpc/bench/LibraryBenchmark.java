@@ -0,0 +1,145 @@
+package uk.humbkr.jmpc.bench;
+
+import org.bff.javampd.song.MPDSong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.library.LibraryIndex;
+import uk.humbkr.jmpc.library.SortKey;
+import uk.humbkr.jmpc.library.SortOrders;
+import uk.humbkr.jmpc.library.TextFolding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search, sorting and index building over the whole library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LibraryBenchmark {
+
+    private static final Comparator<MPDSong> BY_ARTIST_ALBUM_TITLE = Comparator
+            .comparing(MPDSong::getArtistName, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(MPDSong::getAlbumName, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(MPDSong::getTitle, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    @Param({"10000", "100000", "300000", "500000"})
+    public int size;
+
+    private List<MPDSong> songs;
+
+    private LibraryIndex index;
+
+    private String artistQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        songs = SyntheticLibrary.generate(size);
+        index = LibraryIndex.build(songs);
+        artistQuery = songs.stream()
+                .skip(size / 2)
+                .map(MPDSong::getArtistName)
+                .filter(artist -> artist != null)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Benchmark
+    public LibraryIndex buildIndex() {
+        return LibraryIndex.build(songs);
+    }
+
+    /**
+     * A word found in a large share of titles, artists and albums.
+     */
+    @Benchmark
+    public int[] searchCommon() {
+        return index.search("love");
+    }
+
+    /**
+     * A query matching a single artist, the typical narrowing search.
+     */
+    @Benchmark
+    public int[] searchRare() {
+        return index.search(artistQuery);
+    }
+
+    /**
+     * Accented input folds to the same trigrams as plain text.
+     */
+    @Benchmark
+    public int[] searchAccented() {
+        return index.search("Crème");
+    }
+
+    /**
+     * Queries under three characters have no trigram and fall back to a scan.
+     */
+    @Benchmark
+    public int[] searchShort() {
+        return index.search("bl");
+    }
+
+    /**
+     * The best 100 hits for a misspelled word, the per-keystroke cost of the search box.
+     */
+    @Benchmark
+    public int[] rankTypo() {
+        return index.rank("lvoe", 100);
+    }
+
+    /**
+     * Ranking an unfinished two-word query matching across fields.
+     */
+    @Benchmark
+    public int[] rankPrefixes() {
+        return index.rank(artistQuery.substring(0, Math.min(4, artistQuery.length())) + " lo", 100);
+    }
+
+    @Benchmark
+    public void foldAll(Blackhole blackhole) {
+        for (MPDSong song : songs) {
+            blackhole.consume(TextFolding.fold(song.getTitle()));
+        }
+    }
+
+    @Benchmark
+    public SortOrders buildSortOrders() {
+        return SortOrders.build(index.getStore());
+    }
+
+    /**
+     * Search matches rearranged in a precomputed order, as when sorting a search in the grid.
+     */
+    @Benchmark
+    public int[] sortMatchesByArtist() {
+        return index.getSortOrders().sort(index.search("love"), SortKey.ARTIST, false);
+    }
+
+    @Benchmark
+    public List<MPDSong> sortByArtistAlbumTitle() {
+        List<MPDSong> sorted = new ArrayList<>(songs);
+        sorted.sort(BY_ARTIST_ALBUM_TITLE);
+        return sorted;
+    }
+
+}
@@ -0,0 +1,76 @@
+package uk.humbkr.jmpc.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.library.LibrarySnapshotFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisting and restoring the library snapshot, i.e. the cold start path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SnapshotBenchmark {
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    private LibrarySnapshot snapshot;
+
+    private Path directory;
+
+    private Path written;
+
+    private Path scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        snapshot = LibrarySnapshot.of(1, SyntheticLibrary.generate(size), Map.of());
+        directory = Files.createTempDirectory("jmpc-bench");
+        written = directory.resolve("read.snapshot");
+        scratch = directory.resolve("write.snapshot");
+        LibrarySnapshotFile.write(written, snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(written);
+        Files.deleteIfExists(scratch);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Path write() throws IOException {
+        LibrarySnapshotFile.write(scratch, snapshot);
+        return scratch;
+    }
+
+    @Benchmark
+    public Optional<LibrarySnapshot> read() {
+        return LibrarySnapshotFile.read(written);
+    }
+
+}
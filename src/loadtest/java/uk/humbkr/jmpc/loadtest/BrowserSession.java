@@ -0,0 +1,228 @@
+package uk.humbkr.jmpc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * One simulated browser tab: it bootstraps a Vaadin UI over the client-server protocol, navigates to
+ * {@code MainView} and clicks the play/pause button. Push is not connected; pending UI changes are
+ * delivered with the response to the next request, so the session polls with empty requests, as with
+ * the long-polling fallback, to see state pushed by the server.
+ */
+final class BrowserSession {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final String PLAY_PAUSE_ID = "play-pause";
+
+    private static final String PLAY_ICON = "vaadin:play";
+
+    private static final String PAUSE_ICON = "vaadin:pause";
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+
+    // The UI's root element is always the first node of the state tree
+    private static final int UI_ROOT_NODE = 1;
+
+    private final HttpClient http;
+
+    private final URI baseUri;
+
+    private String cookie;
+
+    private String csrfToken;
+
+    private int uiId;
+
+    private int syncId = -1;
+
+    private int clientId;
+
+    private int playPauseNode = -1;
+
+    // The icon the play/pause button last showed
+    private String playPauseIcon;
+
+    BrowserSession(HttpClient http, URI baseUri) {
+        this.http = http;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Creates the UI and navigates to the main view.
+     *
+     * @throws IOException if the view could not be opened
+     */
+    void open() throws IOException, InterruptedException {
+        HttpRequest init = request("?v-r=init&location=&query=").GET().build();
+        HttpResponse<String> response = send(init);
+        cookie = response.headers().firstValue("Set-Cookie")
+                .map(value -> value.split(";", 2)[0])
+                .orElseThrow(() -> new IOException("No session cookie in the bootstrap response"));
+
+        JsonNode body = JSON.readTree(response.body());
+        JsonNode token = body.findValue("Vaadin-Security-Key");
+        JsonNode ui = body.findValue("v-uiId");
+        if (token == null || ui == null) {
+            throw new IOException("Unexpected bootstrap response: " + abbreviate(response.body()));
+        }
+        csrfToken = token.asText();
+        uiId = ui.asInt();
+        JsonNode uidl = body.findValue("uidl");
+        if (uidl != null) {
+            apply(uidl);
+        }
+
+        if (playPauseNode < 0) {
+            // Client-side bootstrap: the router asks the server to navigate
+            ObjectNode connect = JSON.createObjectNode()
+                    .put("type", "publishedEventHandler")
+                    .put("node", UI_ROOT_NODE)
+                    .put("templateEventMethodName", "connectClient")
+                    .put("promise", 0);
+            connect.putArray("templateEventMethodArgs")
+                    .add("")
+                    .add("")
+                    .add("")
+                    .addNull()
+                    .add("");
+            sendRpc(connect);
+        }
+        if (playPauseNode < 0) {
+            throw new IOException("MainView did not attach, no element with id " + PLAY_PAUSE_ID);
+        }
+    }
+
+    /**
+     * Clicks play/pause, then polls until the button shows the other icon: the click went through
+     * MPD, the idle listener and the status hub, and the new state was pushed to this UI.
+     *
+     * @return nanoseconds until the server answered the click itself
+     * @throws IOException if the state did not change within the timeout
+     */
+    long clickPlayPauseAndAwait(Duration timeout) throws IOException, InterruptedException {
+        String before = playPauseIcon;
+        long begin = System.nanoTime();
+        clickPlayPause();
+        long requestNanos = System.nanoTime() - begin;
+
+        long deadline = begin + timeout.toNanos();
+        while (Objects.equals(playPauseIcon, before)) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Play/pause state not seen within " + timeout.toMillis() + " ms");
+            }
+            Thread.sleep(POLL_INTERVAL);
+            sendRpc();
+        }
+        return requestNanos;
+    }
+
+    /**
+     * Clicks play/pause and waits for the server's response.
+     */
+    void clickPlayPause() throws IOException, InterruptedException {
+        ObjectNode click = JSON.createObjectNode()
+                .put("type", "event")
+                .put("node", playPauseNode)
+                .put("event", "click");
+        click.putObject("data")
+                .put("event.screenX", 0)
+                .put("event.screenY", 0)
+                .put("event.clientX", 0)
+                .put("event.clientY", 0)
+                .put("event.detail", 1)
+                .put("event.button", 0)
+                .put("event.ctrlKey", false)
+                .put("event.shiftKey", false)
+                .put("event.altKey", false)
+                .put("event.metaKey", false);
+        sendRpc(click);
+    }
+
+    /**
+     * Sends the invocations, none to only poll for pending changes.
+     */
+    private void sendRpc(ObjectNode... invocations) throws IOException, InterruptedException {
+        ObjectNode message = JSON.createObjectNode()
+                .put("csrfToken", csrfToken)
+                .put("syncId", syncId)
+                .put("clientId", clientId);
+        ArrayNode rpc = message.putArray("rpc");
+        for (ObjectNode invocation : invocations) {
+            rpc.add(invocation);
+        }
+
+        HttpRequest request = request("?v-r=uidl&v-uiId=" + uiId)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(message)))
+                .build();
+        String body = send(request).body();
+
+        // UIDL responses are wrapped as for(;;);[{...}] against JSON hijacking
+        int start = body.indexOf('[');
+        JsonNode responses = start >= 0 ? JSON.readTree(body.substring(start)) : null;
+        if (responses == null || !responses.isArray() || responses.isEmpty()) {
+            throw new IOException("Unexpected UIDL response: " + abbreviate(body));
+        }
+        apply(responses.get(0));
+    }
+
+    private void apply(JsonNode uidl) throws IOException {
+        if (uidl.has("meta") && uidl.get("meta").has("appError")) {
+            throw new IOException("UI error: " + uidl.get("meta").get("appError"));
+        }
+        if (uidl.has("syncId")) {
+            syncId = uidl.get("syncId").asInt();
+        }
+        clientId = uidl.has("clientId") ? uidl.get("clientId").asInt() : clientId + 1;
+
+        JsonNode changes = uidl.get("changes");
+        if (changes instanceof ArrayNode array) {
+            for (JsonNode change : array) {
+                if ("put".equals(change.path("type").asText())
+                        && "id".equals(change.path("key").asText())
+                        && PLAY_PAUSE_ID.equals(change.path("value").asText())) {
+                    playPauseNode = change.path("node").asInt();
+                }
+                // The button's icon element is replaced on every render of the player state
+                String icon = change.path("value").asText();
+                if ("put".equals(change.path("type").asText()) && "icon".equals(change.path("key").asText())
+                        && (PLAY_ICON.equals(icon) || PAUSE_ICON.equals(icon))) {
+                    playPauseIcon = icon;
+                }
+            }
+        }
+    }
+
+    private HttpRequest.Builder request(String query) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve("/" + query))
+                .timeout(Duration.ofSeconds(30));
+        if (cookie != null) {
+            builder.header("Cookie", cookie);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " for " + request.uri());
+        }
+        return response;
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() <= 200 ? text : text.substring(0, 200) + "…";
+    }
+
+}
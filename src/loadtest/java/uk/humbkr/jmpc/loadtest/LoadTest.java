@@ -0,0 +1,219 @@
+package uk.humbkr.jmpc.loadtest;
+
+import org.bff.javampd.song.MPDSong;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import uk.humbkr.jmpc.JmpcApplication;
+import uk.humbkr.jmpc.config.FakeMpdConfig;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.service.LibraryService;
+import uk.humbkr.jmpc.service.MpdService;
+import uk.humbkr.jmpc.service.MpdStatusHub;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts jmpc against the in-process fake MPD, opens many simulated browser tabs on {@code MainView}
+ * and reports what each connected UI costs: heap, threads, push and MPD traffic, and latency. Request
+ * latency is the UIDL round trip of a play/pause click; action latency lasts until the session sees
+ * the resulting state, pushed after MPD executed the command and reported the change. Every session
+ * toggles the same player, so a session may see another session's toggle first; with clicks spread
+ * over the interval that is rare and only shortens the measurement.
+ * <p>
+ * Run with {@code mvn -Pproduction,loadtest test-compile exec:java}, tuned with
+ * {@code -Dloadtest.sessions}, {@code -Dloadtest.duration-seconds}, {@code -Dloadtest.click-interval-ms},
+ * {@code -Dloadtest.library-size} and {@code -Dloadtest.latency-ms}. The harness shares the JVM with the
+ * server, so heap and threads are reported as the growth over an idle baseline.
+ */
+public final class LoadTest {
+
+    private static final int SEEDED_QUEUE_LENGTH = 50;
+
+    private static final Duration ACTION_TIMEOUT = Duration.ofSeconds(10);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = Integer.getInteger("loadtest.sessions", 200);
+        int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+        int clickIntervalMs = Integer.getInteger("loadtest.click-interval-ms", 5000);
+        int librarySize = Integer.getInteger("loadtest.library-size", 10000);
+        int latencyMs = Integer.getInteger("loadtest.latency-ms", 1);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JmpcApplication.class).run(
+                "--server.port=0",
+                "--vaadin.productionMode=true",
+                "--mpd.library.snapshot-dir=",
+                "--mpd.fake.enabled=true",
+                "--mpd.fake.library-size=" + librarySize,
+                "--mpd.fake.latency-ms=" + latencyMs);
+        try {
+            run(context, sessions, Duration.ofSeconds(durationSeconds), clickIntervalMs, librarySize);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(ConfigurableApplicationContext context, int sessionCount, Duration duration,
+                            int clickIntervalMs, int librarySize) throws Exception {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        URI baseUri = URI.create("http://localhost:" + port + "/");
+        FakeMpdServer mpd = context.getBean(FakeMpdConfig.class).getFakeMpdServer();
+        MpdStatusHub statusHub = context.getBean(MpdStatusHub.class);
+        LibraryService libraryService = context.getBean(LibraryService.class);
+
+        // Something to play, so clicks change the player state every UI has to see
+        List<MPDSong> queue = SyntheticLibrary.generate(librarySize).subList(0, Math.min(SEEDED_QUEUE_LENGTH, librarySize));
+        MpdService mpdService = context.getBean(MpdService.class);
+        mpdService.addAllToPlaylist(queue);
+        mpdService.play();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long baselineHeap = usedHeapAfterGc(memory);
+        int baselineThreads = threads.getThreadCount();
+
+        // Open the sessions, then let them click for the measured duration
+        HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        ConcurrentLinkedQueue<Long> requestLatencies = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Long> actionLatencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger opened = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(sessionCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(sessionCount);
+
+        long openStart = System.nanoTime();
+        for (int i = 0; i < sessionCount; i++) {
+            workers.add(Thread.ofVirtual().name("loadtest-session-" + i).start(() -> {
+                BrowserSession session = new BrowserSession(http, baseUri);
+                try {
+                    session.open();
+                    opened.incrementAndGet();
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    if (failures.get() == 1) {
+                        System.err.println("Session failed to open: " + e.getMessage());
+                    }
+                    return;
+                } finally {
+                    ready.countDown();
+                }
+                click(session, start, clickIntervalMs, requestLatencies, actionLatencies, failures);
+            }));
+        }
+        ready.await();
+        long openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openStart);
+        if (opened.get() == 0) {
+            throw new IllegalStateException("No session could be opened");
+        }
+
+        long sessionHeap = usedHeapAfterGc(memory);
+        int sessionThreads = threads.getThreadCount();
+
+        long pushesBefore = statusHub.getPushCount() + libraryService.getPushCount();
+        long commandsBefore = mpd.getCommandCount();
+        long measureStart = System.nanoTime();
+        start.countDown();
+        Thread.sleep(duration.toMillis());
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        long pushes = statusHub.getPushCount() + libraryService.getPushCount() - pushesBefore;
+        long commands = mpd.getCommandCount() - commandsBefore;
+        int peakThreads = threads.getPeakThreadCount();
+
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        List<Long> requests = new ArrayList<>(requestLatencies);
+        Collections.sort(requests);
+        List<Long> actions = new ArrayList<>(actionLatencies);
+        Collections.sort(actions);
+        int sessionsOpen = opened.get();
+
+        System.out.println();
+        System.out.println("=== jmpc load test ===");
+        print("sessions opened", "%d of %d in %d ms", sessionsOpen, sessionCount, openMillis);
+        print("failures", "%d", failures.get());
+        print("heap per session", "%.1f KiB", (sessionHeap - baselineHeap) / 1024.0 / sessionsOpen);
+        print("platform threads", "%d idle, %d with sessions, %d peak", baselineThreads, sessionThreads, peakThreads);
+        print("push messages", "%.1f/s", pushes / seconds);
+        print("MPD commands", "%.1f/s (%d connections opened)", commands / seconds, mpd.getConnectionCount());
+        print("clicks", "%d", actions.size());
+        print("request latency p50", "%.1f ms", percentile(requests, 0.50));
+        print("request latency p99", "%.1f ms", percentile(requests, 0.99));
+        print("action latency p50", "%.1f ms", percentile(actions, 0.50));
+        print("action latency p99", "%.1f ms", percentile(actions, 0.99));
+        print("action latency max", "%.1f ms", percentile(actions, 1.0));
+    }
+
+    /**
+     * Clicks play/pause every interval until interrupted at the end of the measurement, timing each
+     * click until its effect is seen.
+     */
+    private static void click(BrowserSession session, CountDownLatch start, int intervalMs,
+                              ConcurrentLinkedQueue<Long> requestLatencies,
+                              ConcurrentLinkedQueue<Long> actionLatencies, AtomicInteger failures) {
+        try {
+            start.await();
+            // Spread the sessions' clicks over the interval
+            Thread.sleep(ThreadLocalRandom.current().nextInt(intervalMs));
+            while (true) {
+                long begin = System.nanoTime();
+                try {
+                    requestLatencies.add(session.clickPlayPauseAndAwait(ACTION_TIMEOUT));
+                    actionLatencies.add(System.nanoTime() - begin);
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+                Thread.sleep(intervalMs);
+            }
+        } catch (InterruptedException e) {
+            // Measurement over
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static double percentile(List<Long> sortedNanos, double percentile) {
+        if (sortedNanos.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1e6;
+    }
+
+    private static void print(String label, String format, Object... values) {
+        System.out.printf(Locale.ROOT, "%-20s %s%n", label, String.format(Locale.ROOT, format, values));
+    }
+
+}
@@ -0,0 +1,129 @@
+import { css, html, LitElement } from 'lit';
+import '@vaadin/progress-bar';
+
+/**
+ * Progress bar and "mm:ss / mm:ss" label that advance locally while playing.
+ * The server sets elapsed, duration (both in milliseconds) and playing only when playback changes.
+ */
+class JmpcProgress extends LitElement {
+
+  static properties = {
+    elapsed: { type: Number },
+    duration: { type: Number },
+    playing: { type: Boolean },
+  };
+
+  static styles = css`
+    :host {
+      display: flex;
+      flex-direction: column;
+      align-items: center;
+      width: 100%;
+    }
+
+    vaadin-progress-bar {
+      width: 100%;
+    }
+  `;
+
+  constructor() {
+    super();
+    this.elapsed = 0;
+    this.duration = 0;
+    this.playing = false;
+    this._anchor = performance.now();
+    this._frame = null;
+  }
+
+  disconnectedCallback() {
+    super.disconnectedCallback();
+    this._stop();
+  }
+
+  connectedCallback() {
+    super.connectedCallback();
+    if (this.playing) {
+      this._start();
+    }
+  }
+
+  willUpdate(changed) {
+    if (changed.has('elapsed') || changed.has('duration') || changed.has('playing')) {
+      // The values are as of now, timestamped with the client clock to avoid server clock skew
+      this._anchor = performance.now();
+    }
+  }
+
+  updated() {
+    this._paint();
+    if (this.playing) {
+      this._start();
+    } else {
+      this._stop();
+    }
+  }
+
+  render() {
+    return html`
+      <vaadin-progress-bar min="0" max="1"></vaadin-progress-bar>
+      <span class="time"></span>
+    `;
+  }
+
+  _start() {
+    if (this._frame === null) {
+      this._frame = requestAnimationFrame(() => this._tick());
+    }
+  }
+
+  _stop() {
+    if (this._frame !== null) {
+      cancelAnimationFrame(this._frame);
+      this._frame = null;
+    }
+  }
+
+  _tick() {
+    this._frame = null;
+    this._paint();
+    if (this.playing) {
+      this._start();
+    }
+  }
+
+  _paint() {
+    const bar = this.renderRoot.querySelector('vaadin-progress-bar');
+    const label = this.renderRoot.querySelector('.time');
+    if (!bar || !label) {
+      return;
+    }
+
+    let position = this.elapsed;
+    if (this.playing) {
+      position += performance.now() - this._anchor;
+    }
+    if (this.duration > 0) {
+      position = Math.min(position, this.duration);
+    }
+
+    bar.value = this.duration > 0 ? position / this.duration : 0;
+
+    // The label only changes once per second
+    const text = this.duration > 0
+      ? `${formatTime(position)} / ${formatTime(this.duration)}`
+      : '00:00 / 00:00';
+    if (label.textContent !== text) {
+      label.textContent = text;
+    }
+  }
+
+}
+
+function formatTime(millis) {
+  const seconds = Math.floor(millis / 1000);
+  const mins = Math.floor(seconds / 60);
+  const secs = seconds % 60;
+  return `${String(mins).padStart(2, '0')}:${String(secs).padStart(2, '0')}`;
+}
+
+customElements.define('jmpc-progress', JmpcProgress);
@@ -1,8 +1,10 @@
-//package uk.humbkr.jmpc;
-//
-//import com.vaadin.flow.component.page.AppShellConfigurator;
-//import com.vaadin.flow.component.page.Viewport;
-//
-//@Viewport("width=device-width, minimum-scale=1, initial-scale=1, user-scalable=yes, viewport-fit=cover")
-//public class AppShell implements AppShellConfigurator {
-//}
\ No newline at end of file
+package uk.humbkr.jmpc;
+
+import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
+import com.vaadin.flow.component.page.Viewport;
+
+@Push
+@Viewport("width=device-width, minimum-scale=1, initial-scale=1, user-scalable=yes, viewport-fit=cover")
+public class AppShell implements AppShellConfigurator {
+}
@@ -0,0 +1,238 @@
+package uk.humbkr.jmpc.albumart;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Two-level LRU cache of cover thumbnails, keyed by content hash and size.
+ * <p>
+ * Recently used thumbnails are kept in memory up to a byte budget; every thumbnail is also written
+ * to a directory, which is trimmed to its own budget by evicting the least recently used files.
+ * File modification times record use, so the order survives restarts. Without a directory the
+ * cache is memory only.
+ */
+@Slf4j
+public final class AlbumArtCache {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private static final String EXTENSION = ".jpg";
+
+    private final Path directory;
+
+    private final long memoryMaxBytes;
+
+    private final long diskMaxBytes;
+
+    // Both access-ordered, eldest first
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long memoryBytes;
+
+    private long diskBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+
+    private final LongAdder diskHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param directory where thumbnails are stored, or {@code null} to keep them in memory only
+     */
+    public AlbumArtCache(Path directory, long memoryMaxBytes, long diskMaxBytes) {
+        this.directory = directory;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        if (directory != null) {
+            scan();
+        }
+    }
+
+    public static boolean isHash(String value) {
+        return value != null && HASH.matcher(value).matches();
+    }
+
+    public Optional<byte[]> get(String hash, ThumbnailSize size) {
+        if (!isHash(hash)) {
+            return Optional.empty();
+        }
+        String key = key(hash, size);
+
+        boolean onDisk;
+        synchronized (this) {
+            byte[] cached = memory.get(key);
+            if (cached != null) {
+                memoryHits.increment();
+                return Optional.of(cached);
+            }
+            onDisk = disk.get(key) != null;
+        }
+        if (!onDisk) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        try {
+            Path file = directory.resolve(key);
+            byte[] thumbnail = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            diskHits.increment();
+            synchronized (this) {
+                putInMemory(key, thumbnail);
+            }
+            return Optional.of(thumbnail);
+        } catch (IOException e) {
+            log.debug("Dropping unreadable cached cover {}", key, e);
+            synchronized (this) {
+                Long removed = disk.remove(key);
+                diskBytes -= removed != null ? removed : 0;
+            }
+            misses.increment();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Whether every size of the cover is cached, in memory or on disk.
+     */
+    public synchronized boolean contains(String hash) {
+        for (ThumbnailSize size : ThumbnailSize.values()) {
+            String key = key(hash, size);
+            if (!memory.containsKey(key) && !disk.containsKey(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String hash, Map<ThumbnailSize, byte[]> thumbnails) {
+        if (!isHash(hash)) {
+            throw new IllegalArgumentException("Not a content hash: " + hash);
+        }
+        thumbnails.forEach((size, thumbnail) -> {
+            String key = key(hash, size);
+            if (directory != null) {
+                write(key, thumbnail);
+            }
+            synchronized (this) {
+                putInMemory(key, thumbnail);
+            }
+        });
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void putInMemory(String key, byte[] thumbnail) {
+        byte[] previous = memory.put(key, thumbnail);
+        memoryBytes += thumbnail.length - (previous != null ? previous.length : 0);
+
+        Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private void write(String key, byte[] thumbnail) {
+        Path file = directory.resolve(key);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, thumbnail);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to cache cover {} on disk", key, e);
+            return;
+        }
+
+        synchronized (this) {
+            Long previous = disk.put(key, (long) thumbnail.length);
+            diskBytes += thumbnail.length - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+            while (diskBytes > diskMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> evicted = eldest.next();
+                if (evicted.getKey().equals(key)) {
+                    continue;
+                }
+                diskBytes -= evicted.getValue();
+                eldest.remove();
+                deleteQuietly(directory.resolve(evicted.getKey()));
+            }
+        }
+    }
+
+    private void scan() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+                        .sorted(Comparator.comparing(AlbumArtCache::lastModified))
+                        .forEach(file -> {
+                            long length = file.toFile().length();
+                            disk.put(file.getFileName().toString(), length);
+                            diskBytes += length;
+                        });
+            }
+            log.info("Album art cache in {} holds {} thumbnails, {} KiB", directory, disk.size(), diskBytes / 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot use album art cache directory " + directory, e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete evicted cover {}", file, e);
+        }
+    }
+
+    private static String key(String hash, ThumbnailSize size) {
+        return hash + "-" + size.getPathName() + EXTENSION;
+    }
+
+}
@@ -0,0 +1,30 @@
+package uk.humbkr.jmpc.albumart;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * URLs of the album art endpoint.
+ */
+public final class AlbumArtUrls {
+
+    public static final String BASE_PATH = "/albumart";
+
+    private AlbumArtUrls() {
+    }
+
+    /**
+     * The cover of a song's album, fetched from MPD on first use.
+     */
+    public static String song(String file, ThumbnailSize size) {
+        return BASE_PATH + "/song/" + size.getPathName() + "?file=" + URLEncoder.encode(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A cover by content hash; immutable, so browsers may cache it for good.
+     */
+    public static String thumbnail(String hash, ThumbnailSize size) {
+        return BASE_PATH + "/" + hash + "/" + size.getPathName();
+    }
+
+}
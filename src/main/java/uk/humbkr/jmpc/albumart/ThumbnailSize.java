@@ -0,0 +1,46 @@
+package uk.humbkr.jmpc.albumart;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The sizes covers are served in, as the edge of a square in pixels.
+ */
+public enum ThumbnailSize {
+
+    /** Library grid rows */
+    SMALL(48),
+
+    /** Lists and tiles */
+    MEDIUM(160),
+
+    /** Now playing */
+    LARGE(400);
+
+    private final int pixels;
+
+    ThumbnailSize(int pixels) {
+        this.pixels = pixels;
+    }
+
+    public int getPixels() {
+        return pixels;
+    }
+
+    /**
+     * The name used in URLs, e.g. {@code small}.
+     */
+    public String getPathName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Optional<ThumbnailSize> fromPathName(String pathName) {
+        for (ThumbnailSize size : values()) {
+            if (size.getPathName().equals(pathName)) {
+                return Optional.of(size);
+            }
+        }
+        return Optional.empty();
+    }
+
+}
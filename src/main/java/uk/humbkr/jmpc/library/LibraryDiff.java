@@ -0,0 +1,40 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.List;
+
+/**
+ * Songs added, removed and changed between two library snapshots.
+ *
+ * @param full    {@code true} when the library was replaced wholesale and no song-level diff is known
+ * @param added   songs new in the library
+ * @param removed songs no longer in the library
+ * @param changed songs whose tags changed, as they are now
+ */
+public record LibraryDiff(boolean full, List<MPDSong> added, List<MPDSong> removed, List<MPDSong> changed) {
+
+    public static final LibraryDiff FULL = new LibraryDiff(true, List.of(), List.of(), List.of());
+
+    public LibraryDiff {
+        added = List.copyOf(added);
+        removed = List.copyOf(removed);
+        changed = List.copyOf(changed);
+    }
+
+    public static LibraryDiff of(List<MPDSong> added, List<MPDSong> removed, List<MPDSong> changed) {
+        return new LibraryDiff(false, added, removed, changed);
+    }
+
+    /**
+     * Whether rows were added or removed, i.e. positions in a grid shifted.
+     */
+    public boolean isStructural() {
+        return full || !added.isEmpty() || !removed.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !full && added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+}
@@ -0,0 +1,231 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable substring search index over the music library.
+ * <p>
+ * Title (or file name), artist and album are folded once when the index is built, and every
+ * trigram of those fields points to the songs containing it. A query looks up its rarest trigram
+ * and only verifies those candidates against the pre-folded fields, so searching allocates nothing
+ * per song. Artists and albums are folded once per distinct value of the {@link SongStore}'s pool.
+ * Songs are addressed by their ordinal in the store. The index also carries the library's
+ * {@link SortOrders}, built with it once per library version.
+ */
+public final class LibraryIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final SongStore store;
+
+    private final String[] titles;
+
+    // Folded pool strings, indexed by pool id
+    private final String[] pool;
+
+    private final Map<Long, int[]> postings;
+
+    private final SortOrders sortOrders;
+
+    private LibraryIndex(SongStore store, String[] titles, String[] pool, Map<Long, int[]> postings,
+                         SortOrders sortOrders) {
+        this.store = store;
+        this.titles = titles;
+        this.pool = pool;
+        this.postings = postings;
+        this.sortOrders = sortOrders;
+    }
+
+    public static LibraryIndex build(List<MPDSong> songs) {
+        return build(SongStore.of(songs));
+    }
+
+    public static LibraryIndex build(SongStore store) {
+        int size = store.size();
+        String[] titles = new String[size];
+        String[] pool = new String[store.poolSize()];
+        Arrays.setAll(pool, id -> TextFolding.fold(store.pooled(id)));
+        Map<Long, IntList> builder = new HashMap<>();
+
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            String title = store.title(ordinal) != null ? store.title(ordinal) : store.name(ordinal);
+            titles[ordinal] = TextFolding.fold(title);
+
+            addGrams(builder, titles[ordinal], ordinal);
+            addGrams(builder, folded(pool, store.artistId(ordinal)), ordinal);
+            addGrams(builder, folded(pool, store.albumId(ordinal)), ordinal);
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(builder.size() * 4 / 3 + 1);
+        builder.forEach((gram, ordinals) -> postings.put(gram, ordinals.toArray()));
+        return new LibraryIndex(store, titles, pool, postings, SortOrders.build(store));
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public SongView song(int ordinal) {
+        return store.view(ordinal);
+    }
+
+    public SongStore getStore() {
+        return store;
+    }
+
+    public SortOrders getSortOrders() {
+        return sortOrders;
+    }
+
+    /**
+     * Finds the songs whose title, artist or album contains the query, ignoring case and accents.
+     *
+     * @return matching ordinals in library order; every ordinal for a blank query
+     */
+    public int[] search(String query) {
+        String folded = query == null ? "" : TextFolding.fold(query.trim());
+        if (folded.isEmpty()) {
+            return allOrdinals();
+        }
+
+        int[] candidates = folded.length() >= GRAM_LENGTH ? rarestPosting(folded) : null;
+        int[] matches = new int[candidates != null ? candidates.length : size()];
+        int count = 0;
+
+        if (candidates != null) {
+            for (int ordinal : candidates) {
+                if (matches(ordinal, folded)) {
+                    matches[count++] = ordinal;
+                }
+            }
+        } else {
+            // Too short for a trigram, scan the pre-folded fields
+            for (int ordinal = 0; ordinal < size(); ordinal++) {
+                if (matches(ordinal, folded)) {
+                    matches[count++] = ordinal;
+                }
+            }
+        }
+        return count == matches.length ? matches : Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * The best matches for a query that may be misspelled or unfinished, see {@link RankedSearch}.
+     *
+     * @return up to {@code limit} ordinals, best first; none for a blank query
+     */
+    public int[] rank(String query, int limit) {
+        String folded = query == null ? "" : TextFolding.fold(query.trim());
+        if (folded.isEmpty()) {
+            return NO_MATCHES;
+        }
+        return RankedSearch.search(store, titles, pool, folded, limit);
+    }
+
+    /**
+     * The {@link #rank ranked} best hits, followed by the other songs containing the query in library
+     * order, so no substring match is lost below the ranked ones.
+     *
+     * @return matching ordinals; every ordinal for a blank query
+     */
+    public int[] searchRanked(String query, int rankedLimit) {
+        int[] substringMatches = search(query);
+        int[] ranked = rank(query, rankedLimit);
+        if (ranked.length == 0) {
+            return substringMatches;
+        }
+
+        BitSet seen = new BitSet(size());
+        int[] matches = Arrays.copyOf(ranked, ranked.length + substringMatches.length);
+        int count = ranked.length;
+        for (int ordinal : ranked) {
+            seen.set(ordinal);
+        }
+        for (int ordinal : substringMatches) {
+            if (!seen.get(ordinal)) {
+                matches[count++] = ordinal;
+            }
+        }
+        return count == matches.length ? matches : Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @param foldedQuery a query already passed through {@link TextFolding#fold(String)}
+     */
+    public boolean matches(int ordinal, String foldedQuery) {
+        return titles[ordinal].contains(foldedQuery)
+                || folded(pool, store.artistId(ordinal)).contains(foldedQuery)
+                || folded(pool, store.albumId(ordinal)).contains(foldedQuery);
+    }
+
+    private static String folded(String[] pool, int id) {
+        return id == SongStore.NONE ? "" : pool[id];
+    }
+
+    private int[] allOrdinals() {
+        int[] ordinals = new int[size()];
+        Arrays.setAll(ordinals, i -> i);
+        return ordinals;
+    }
+
+    private int[] rarestPosting(String folded) {
+        int[] rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            int[] posting = postings.get(gram(folded, i));
+            if (posting == null) {
+                // A trigram no song contains, nothing can match
+                return NO_MATCHES;
+            }
+            if (rarest == null || posting.length < rarest.length) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    private static void addGrams(Map<Long, IntList> builder, String field, int ordinal) {
+        for (int i = 0; i + GRAM_LENGTH <= field.length(); i++) {
+            builder.computeIfAbsent(gram(field, i), key -> new IntList()).addIfLast(ordinal);
+        }
+    }
+
+    private static long gram(String value, int offset) {
+        return ((long) value.charAt(offset) << 32)
+                | ((long) value.charAt(offset + 1) << 16)
+                | value.charAt(offset + 2);
+    }
+
+    /**
+     * Growable posting list; ordinals arrive in ascending order, so duplicates are always last.
+     */
+    private static final class IntList {
+
+        private int[] values = new int[4];
+
+        private int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+    }
+
+}
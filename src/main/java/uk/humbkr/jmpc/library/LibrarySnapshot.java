@@ -0,0 +1,46 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, versioned copy of the music library shared by all sessions.
+ *
+ * @param version     MPD's {@code db_update} timestamp the snapshot was loaded for
+ * @param index       the songs, in a compact {@link SongStore}, and their search index
+ * @param directories {@code Last-Modified} stamp of every directory, used for incremental syncs
+ * @param loadedAt    when the snapshot was built
+ */
+public record LibrarySnapshot(long version, LibraryIndex index, Map<String, String> directories, Instant loadedAt) {
+
+    public static final LibrarySnapshot EMPTY =
+            new LibrarySnapshot(-1, LibraryIndex.build(SongStore.empty()), Map.of(), Instant.EPOCH);
+
+    public LibrarySnapshot {
+        directories = Map.copyOf(directories);
+    }
+
+    public static LibrarySnapshot of(long version, List<MPDSong> songs, Map<String, String> directories) {
+        return of(version, SongStore.of(songs), directories);
+    }
+
+    public static LibrarySnapshot of(long version, SongStore store, Map<String, String> directories) {
+        return new LibrarySnapshot(version, LibraryIndex.build(store), directories, Instant.now());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public SongView song(int ordinal) {
+        return index.song(ordinal);
+    }
+
+    public SongStore store() {
+        return index.getStore();
+    }
+
+}
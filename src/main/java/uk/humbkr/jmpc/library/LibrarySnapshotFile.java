@@ -0,0 +1,229 @@
+package uk.humbkr.jmpc.library;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compact binary file format for {@link LibrarySnapshot}s.
+ * <p>
+ * Layout: a header (magic, format version, database version, load time, song count), a dictionary
+ * of every distinct string, one column per song field holding dictionary ids ({@code -1} for
+ * missing values) or plain ints (length, track, disc), and the directory stamps as pairs of
+ * dictionary ids. Files are written to a temporary file and moved into place, and read back through
+ * a memory-mapped buffer.
+ */
+@Slf4j
+public final class LibrarySnapshotFile {
+
+    private static final int MAGIC = 0x4a4d504c; // "JMPL"
+
+    private static final int FORMAT_VERSION = 3;
+
+    private static final int NONE = -1;
+
+    private LibrarySnapshotFile() {
+    }
+
+    public static void write(Path file, LibrarySnapshot snapshot) throws IOException {
+        SongStore store = snapshot.store();
+        int size = store.size();
+
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[][] columns = new int[StringColumn.values().length][size];
+        int[][] numbers = new int[IntColumn.values().length][size];
+
+        for (int row = 0; row < size; row++) {
+            for (StringColumn column : StringColumn.values()) {
+                columns[column.ordinal()][row] = encode(column.get(store, row), ids, dictionary);
+            }
+            for (IntColumn column : IntColumn.values()) {
+                numbers[column.ordinal()][row] = column.get(store, row);
+            }
+        }
+
+        int[] directories = new int[snapshot.directories().size() * 2];
+        int next = 0;
+        for (Map.Entry<String, String> directory : snapshot.directories().entrySet()) {
+            directories[next++] = encode(directory.getKey(), ids, dictionary);
+            directories[next++] = encode(directory.getValue(), ids, dictionary);
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshot.version());
+                out.writeLong(snapshot.loadedAt().toEpochMilli());
+                out.writeInt(size);
+
+                out.writeInt(dictionary.size());
+                for (String value : dictionary) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                for (int[] column : columns) {
+                    for (int id : column) {
+                        out.writeInt(id);
+                    }
+                }
+                for (int[] column : numbers) {
+                    for (int value : column) {
+                        out.writeInt(value);
+                    }
+                }
+
+                out.writeInt(directories.length / 2);
+                for (int id : directories) {
+                    out.writeInt(id);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps the file and decodes it.
+     *
+     * @return the snapshot, or empty if the file is missing, from another format version or corrupt
+     */
+    public static Optional<LibrarySnapshot> read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.info("Ignoring library snapshot {} written by another version", file);
+                return Optional.empty();
+            }
+
+            long version = buffer.getLong();
+            Instant loadedAt = Instant.ofEpochMilli(buffer.getLong());
+            int size = buffer.getInt();
+
+            String[] dictionary = new String[buffer.getInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int[][] columns = new int[StringColumn.values().length][size];
+            for (int[] column : columns) {
+                buffer.asIntBuffer().get(column);
+                buffer.position(buffer.position() + size * Integer.BYTES);
+            }
+            int[][] numbers = new int[IntColumn.values().length][size];
+            for (int[] column : numbers) {
+                buffer.asIntBuffer().get(column);
+                buffer.position(buffer.position() + size * Integer.BYTES);
+            }
+
+            Map<String, String> directories = new HashMap<>();
+            int directoryCount = buffer.getInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String path = lookup(dictionary, buffer.getInt());
+                String lastModified = lookup(dictionary, buffer.getInt());
+                if (path != null && lastModified != null) {
+                    directories.put(path, lastModified);
+                }
+            }
+
+            // Straight into the columnar store, no MPDSong is created
+            SongStore.Builder store = SongStore.builder(size);
+            for (int row = 0; row < size; row++) {
+                store.add(lookup(dictionary, columns[StringColumn.FILE.ordinal()][row]),
+                        lookup(dictionary, columns[StringColumn.TITLE.ordinal()][row]),
+                        lookup(dictionary, columns[StringColumn.NAME.ordinal()][row]),
+                        lookup(dictionary, columns[StringColumn.ARTIST.ordinal()][row]),
+                        lookup(dictionary, columns[StringColumn.ALBUM.ordinal()][row]),
+                        lookup(dictionary, columns[StringColumn.GENRE.ordinal()][row]),
+                        numbers[IntColumn.LENGTH.ordinal()][row],
+                        numbers[IntColumn.TRACK.ordinal()][row],
+                        numbers[IntColumn.DISC.ordinal()][row]);
+            }
+            return Optional.of(new LibrarySnapshot(version, LibraryIndex.build(store.build()), directories, loadedAt));
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            log.warn("Ignoring unreadable library snapshot {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private static int encode(String value, Map<String, Integer> ids, List<String> dictionary) {
+        if (value == null) {
+            return NONE;
+        }
+        return ids.computeIfAbsent(value, key -> {
+            dictionary.add(key);
+            return dictionary.size() - 1;
+        });
+    }
+
+    private static String lookup(String[] dictionary, int id) {
+        return id == NONE ? null : dictionary[id];
+    }
+
+    private enum StringColumn {
+
+        FILE,
+        NAME,
+        TITLE,
+        ARTIST,
+        ALBUM,
+        GENRE;
+
+        String get(SongStore store, int row) {
+            return switch (this) {
+                case FILE -> store.file(row);
+                case NAME -> store.name(row);
+                case TITLE -> store.title(row);
+                case ARTIST -> store.artist(row);
+                case ALBUM -> store.album(row);
+                case GENRE -> store.genre(row);
+            };
+        }
+
+    }
+
+    private enum IntColumn {
+
+        LENGTH,
+        TRACK,
+        DISC;
+
+        int get(SongStore store, int row) {
+            return switch (this) {
+                case LENGTH -> store.length(row);
+                case TRACK -> store.track(row);
+                case DISC -> store.disc(row);
+            };
+        }
+
+    }
+
+}
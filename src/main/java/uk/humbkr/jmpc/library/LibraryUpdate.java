@@ -0,0 +1,7 @@
+package uk.humbkr.jmpc.library;
+
+/**
+ * A new library snapshot together with what changed since the previous one.
+ */
+public record LibraryUpdate(LibrarySnapshot snapshot, LibraryDiff diff) {
+}
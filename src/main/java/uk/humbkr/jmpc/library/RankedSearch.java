@@ -0,0 +1,320 @@
+package uk.humbkr.jmpc.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Ranked fuzzy search over the pre-folded fields of a {@link LibraryIndex}.
+ * <p>
+ * Queries and fields are split into words. Every query word has to match a word of the title, artist
+ * or album: exactly, as a prefix, within a small edit distance, or inside it, each scoring less than
+ * the one before. A song's score sums the best match of each query word times the weight of the
+ * field it matched in, so a title hit outranks the same hit in the album. Artists and albums are
+ * scored once per distinct pool string; titles are scored per song in parallel segments on the
+ * common fork/join pool, each keeping a bounded {@link TopHits} heap that is merged on the way up.
+ */
+final class RankedSearch {
+
+    static final float TITLE_WEIGHT = 1.0f;
+
+    static final float ARTIST_WEIGHT = 0.8f;
+
+    static final float ALBUM_WEIGHT = 0.6f;
+
+    private static final float EXACT = 1.0f;
+
+    private static final float PREFIX = 0.8f;
+
+    private static final float FUZZY = 0.6f;
+
+    private static final float FUZZY_PREFIX = 0.45f;
+
+    private static final float INFIX = 0.35f;
+
+    private static final float PENALTY_PER_EDIT = 0.1f;
+
+    // Prefers the shorter of equally matching titles, "Help!" over "Help Me, Rhonda"
+    private static final float PENALTY_PER_TITLE_CHAR = 0.0001f;
+
+    private static final int SEGMENT_SIZE = 8192;
+
+    private final SongStore store;
+
+    private final String[] titles;
+
+    private final String[] words;
+
+    // Best match of each query word in each pool string, by word and pool id
+    private final float[][] poolScores;
+
+    private final int limit;
+
+    private RankedSearch(SongStore store, String[] titles, String[] words, float[][] poolScores, int limit) {
+        this.store = store;
+        this.titles = titles;
+        this.words = words;
+        this.poolScores = poolScores;
+        this.limit = limit;
+    }
+
+    /**
+     * @param titles      folded titles by ordinal
+     * @param pool        folded pool strings by id
+     * @param foldedQuery a query already passed through {@link TextFolding#fold(String)}
+     * @return up to {@code limit} ordinals, best first
+     */
+    static int[] search(SongStore store, String[] titles, String[] pool, String foldedQuery, int limit) {
+        String[] words = words(foldedQuery);
+        if (words.length == 0 || limit <= 0 || titles.length == 0) {
+            return new int[0];
+        }
+
+        ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+        float[][] poolScores = new float[words.length][pool.length];
+        forkJoinPool.invoke(new PoolSegment(pool, words, poolScores, 0, pool.length));
+
+        RankedSearch search = new RankedSearch(store, titles, words, poolScores, limit);
+        return forkJoinPool.invoke(search.new SongSegment(0, titles.length)).drainBestFirst();
+    }
+
+    static String[] words(String folded) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(String[]::new);
+    }
+
+    private TopHits scoreSongs(int from, int to) {
+        TopHits hits = new TopHits(limit);
+        WordMatcher matcher = new WordMatcher();
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            int artist = store.artistId(ordinal);
+            int album = store.albumId(ordinal);
+            String title = titles[ordinal];
+
+            float score = 0;
+            for (int word = 0; word < words.length; word++) {
+                float best = matcher.score(words[word], title) * TITLE_WEIGHT;
+                if (artist != SongStore.NONE) {
+                    best = Math.max(best, poolScores[word][artist] * ARTIST_WEIGHT);
+                }
+                if (album != SongStore.NONE) {
+                    best = Math.max(best, poolScores[word][album] * ALBUM_WEIGHT);
+                }
+                if (best == 0) {
+                    // Every word has to match somewhere
+                    score = 0;
+                    break;
+                }
+                score += best;
+            }
+
+            if (score > 0) {
+                hits.offer(score - title.length() * PENALTY_PER_TITLE_CHAR, ordinal);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Scores a range of songs, splitting it while it is larger than a segment.
+     */
+    private final class SongSegment extends RecursiveTask<TopHits> {
+
+        private final int from;
+
+        private final int to;
+
+        private SongSegment(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopHits compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                return scoreSongs(from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            SongSegment left = new SongSegment(from, middle);
+            left.fork();
+            TopHits hits = new SongSegment(middle, to).compute();
+            hits.addAll(left.join());
+            return hits;
+        }
+
+    }
+
+    /**
+     * Scores every query word against a range of pool strings.
+     */
+    private static final class PoolSegment extends RecursiveAction {
+
+        private final String[] pool;
+
+        private final String[] words;
+
+        private final float[][] scores;
+
+        private final int from;
+
+        private final int to;
+
+        private PoolSegment(String[] pool, String[] words, float[][] scores, int from, int to) {
+            this.pool = pool;
+            this.words = words;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEGMENT_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PoolSegment(pool, words, scores, from, middle),
+                        new PoolSegment(pool, words, scores, middle, to));
+                return;
+            }
+
+            WordMatcher matcher = new WordMatcher();
+            for (int id = from; id < to; id++) {
+                for (int word = 0; word < words.length; word++) {
+                    scores[word][id] = matcher.score(words[word], pool[id]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Scores a query word against the words of a field, with scratch rows reused across calls.
+     */
+    private static final class WordMatcher {
+
+        private int[] previous = new int[32];
+
+        private int[] current = new int[32];
+
+        private int[] beforePrevious = new int[32];
+
+        /**
+         * @return the best score of the query word against any word of the field, 0 if none matches
+         */
+        float score(String word, String field) {
+            float best = 0;
+            int start = -1;
+            for (int i = 0; i <= field.length(); i++) {
+                boolean wordChar = i < field.length() && Character.isLetterOrDigit(field.charAt(i));
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    best = Math.max(best, score(word, field, start, i));
+                    if (best == EXACT) {
+                        return best;
+                    }
+                    start = -1;
+                }
+            }
+            return best;
+        }
+
+        private float score(String word, String field, int from, int to) {
+            int length = to - from;
+            int wordLength = word.length();
+            if (length >= wordLength && field.regionMatches(from, word, 0, wordLength)) {
+                return length == wordLength ? EXACT : PREFIX;
+            }
+
+            float best = 0;
+            int maxEdits = maxEdits(wordLength);
+            if (maxEdits > 0) {
+                if (Math.abs(length - wordLength) <= maxEdits) {
+                    int edits = distance(word, field, from, to, maxEdits);
+                    if (edits <= maxEdits) {
+                        best = FUZZY - (edits - 1) * PENALTY_PER_EDIT;
+                    }
+                }
+                if (best == 0 && length > wordLength) {
+                    // A mistyped beginning of a longer word, as while typing
+                    int edits = distance(word, field, from, from + wordLength, maxEdits);
+                    if (edits <= maxEdits) {
+                        best = FUZZY_PREFIX - (edits - 1) * PENALTY_PER_EDIT;
+                    }
+                }
+            }
+
+            if (best == 0 && wordLength >= 2 && length > wordLength) {
+                int at = field.indexOf(word, from + 1);
+                if (at >= 0 && at + wordLength <= to) {
+                    best = INFIX;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Edit distance counting a transposition as one edit, given up once it exceeds {@code max}.
+         *
+         * @return the distance, or {@code max + 1} if it is larger than {@code max}
+         */
+        private int distance(String word, String field, int from, int to, int max) {
+            int columns = to - from + 1;
+            if (previous.length < columns) {
+                previous = new int[columns];
+                current = new int[columns];
+                beforePrevious = new int[columns];
+            }
+
+            for (int j = 0; j < columns; j++) {
+                previous[j] = j;
+            }
+            for (int i = 1; i <= word.length(); i++) {
+                char a = word.charAt(i - 1);
+                current[0] = i;
+                int rowMinimum = i;
+                for (int j = 1; j < columns; j++) {
+                    char b = field.charAt(from + j - 1);
+                    int edits = Math.min(
+                            Math.min(previous[j] + 1, current[j - 1] + 1),
+                            previous[j - 1] + (a == b ? 0 : 1));
+                    if (i > 1 && j > 1 && a == field.charAt(from + j - 2) && word.charAt(i - 2) == b) {
+                        edits = Math.min(edits, beforePrevious[j - 2] + 1);
+                    }
+                    current[j] = edits;
+                    rowMinimum = Math.min(rowMinimum, edits);
+                }
+                if (rowMinimum > max) {
+                    return max + 1;
+                }
+
+                int[] recycled = beforePrevious;
+                beforePrevious = previous;
+                previous = current;
+                current = recycled;
+            }
+            return previous[columns - 1];
+        }
+
+        private static int maxEdits(int wordLength) {
+            if (wordLength <= 3) {
+                return 0;
+            }
+            return wordLength <= 7 ? 1 : 2;
+        }
+
+    }
+
+}
@@ -0,0 +1,412 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable, column-oriented store of the music library, ordered by file.
+ * <p>
+ * Instead of one {@link MPDSong} per song, every field is a column indexed by the song's ordinal.
+ * Directories, artists, albums and genres repeat across songs, so they are kept once in a shared
+ * string pool and the columns only hold pool ids ({@code -1} for a missing tag); durations, track
+ * and disc numbers are plain {@code int}s. Only file names and titles are stored per song, and the
+ * name only when it is not simply the file name. Songs are read through {@link SongView} flyweights
+ * or materialized with {@link #song(int)} when a full {@code MPDSong} is needed.
+ */
+public final class SongStore {
+
+    public static final int NONE = -1;
+
+    private static final SongStore EMPTY = new Builder(0).build();
+
+    private final String[] pool;
+
+    private final int[] directories;
+
+    private final String[] fileNames;
+
+    private final String[] titles;
+
+    // Name tags that differ from the file name, otherwise null
+    private final String[] names;
+
+    private final int[] artists;
+
+    private final int[] albums;
+
+    private final int[] genres;
+
+    private final int[] lengths;
+
+    private final int[] tracks;
+
+    private final int[] discs;
+
+    private SongStore(String[] pool, int[] directories, String[] fileNames, String[] titles, String[] names,
+                      int[] artists, int[] albums, int[] genres, int[] lengths, int[] tracks, int[] discs) {
+        this.pool = pool;
+        this.directories = directories;
+        this.fileNames = fileNames;
+        this.titles = titles;
+        this.names = names;
+        this.artists = artists;
+        this.albums = albums;
+        this.genres = genres;
+        this.lengths = lengths;
+        this.tracks = tracks;
+        this.discs = discs;
+    }
+
+    public static SongStore empty() {
+        return EMPTY;
+    }
+
+    public static SongStore of(List<MPDSong> songs) {
+        Builder builder = builder(songs.size());
+        songs.forEach(builder::add);
+        return builder.build();
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    public int size() {
+        return fileNames.length;
+    }
+
+    public SongView view(int ordinal) {
+        return new SongView(this, ordinal);
+    }
+
+    /**
+     * Materializes a song; prefer {@link #view(int)} for reading fields.
+     */
+    public MPDSong song(int ordinal) {
+        return MPDSong.builder()
+                .file(file(ordinal))
+                .name(name(ordinal))
+                .title(titles[ordinal])
+                .artistName(artist(ordinal))
+                .albumName(album(ordinal))
+                .genre(genre(ordinal))
+                .track(tracks[ordinal] > 0 ? Integer.toString(tracks[ordinal]) : null)
+                .discNumber(discs[ordinal] > 0 ? Integer.toString(discs[ordinal]) : null)
+                .length(lengths[ordinal])
+                .build();
+    }
+
+    /**
+     * All songs, materialized one at a time as they are read.
+     */
+    public List<MPDSong> songs() {
+        return new AbstractList<>() {
+
+            @Override
+            public MPDSong get(int index) {
+                return song(index);
+            }
+
+            @Override
+            public int size() {
+                return SongStore.this.size();
+            }
+
+        };
+    }
+
+    /**
+     * @return the ordinal of the song with this file, or {@code -1}
+     */
+    public int ordinalOf(String file) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = file(middle).compareTo(file);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public String file(int ordinal) {
+        String directory = pool[directories[ordinal]];
+        return directory.isEmpty() ? fileNames[ordinal] : directory + "/" + fileNames[ordinal];
+    }
+
+    public String fileName(int ordinal) {
+        return fileNames[ordinal];
+    }
+
+    public String name(int ordinal) {
+        return names[ordinal] != null ? names[ordinal] : fileNames[ordinal];
+    }
+
+    public String title(int ordinal) {
+        return titles[ordinal];
+    }
+
+    public String artist(int ordinal) {
+        return lookup(artists[ordinal]);
+    }
+
+    public String album(int ordinal) {
+        return lookup(albums[ordinal]);
+    }
+
+    public String genre(int ordinal) {
+        return lookup(genres[ordinal]);
+    }
+
+    public int length(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    /**
+     * @return the track number, or 0 if unknown
+     */
+    public int track(int ordinal) {
+        return tracks[ordinal];
+    }
+
+    /**
+     * @return the disc number, or 0 if unknown
+     */
+    public int disc(int ordinal) {
+        return discs[ordinal];
+    }
+
+    /**
+     * Whether the song has the same tags as stored, compared as the store keeps them.
+     */
+    public boolean hasSameTags(int ordinal, MPDSong song) {
+        return lengths[ordinal] == song.getLength()
+                && tracks[ordinal] == parseNumber(song.getTrack())
+                && discs[ordinal] == parseNumber(song.getDiscNumber())
+                && Objects.equals(titles[ordinal], song.getTitle())
+                && Objects.equals(name(ordinal), song.getName())
+                && Objects.equals(artist(ordinal), song.getArtistName())
+                && Objects.equals(album(ordinal), song.getAlbumName())
+                && Objects.equals(genre(ordinal), song.getGenre());
+    }
+
+    // Pool ids, equal for songs sharing the value
+
+    public int directoryId(int ordinal) {
+        return directories[ordinal];
+    }
+
+    public int artistId(int ordinal) {
+        return artists[ordinal];
+    }
+
+    public int albumId(int ordinal) {
+        return albums[ordinal];
+    }
+
+    public int genreId(int ordinal) {
+        return genres[ordinal];
+    }
+
+    public int poolSize() {
+        return pool.length;
+    }
+
+    public String pooled(int id) {
+        return lookup(id);
+    }
+
+    private String lookup(int id) {
+        return id == NONE ? null : pool[id];
+    }
+
+    /**
+     * Parses the leading number of a {@code Track} or {@code Disc} tag such as {@code 3/12}.
+     *
+     * @return the number, or 0 if there is none
+     */
+    static int parseNumber(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int number = 0;
+        for (int i = 0; i < value.length() && i < 9; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Collects songs in any order; {@link #build()} sorts them by file and pools the shared strings.
+     */
+    public static final class Builder {
+
+        private String[] files;
+
+        private String[] titles;
+
+        private String[] names;
+
+        private String[] artists;
+
+        private String[] albums;
+
+        private String[] genres;
+
+        private int[] lengths;
+
+        private int[] tracks;
+
+        private int[] discs;
+
+        private int size;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            files = new String[capacity];
+            titles = new String[capacity];
+            names = new String[capacity];
+            artists = new String[capacity];
+            albums = new String[capacity];
+            genres = new String[capacity];
+            lengths = new int[capacity];
+            tracks = new int[capacity];
+            discs = new int[capacity];
+        }
+
+        public Builder add(MPDSong song) {
+            return add(song.getFile(), song.getTitle(), song.getName(), song.getArtistName(), song.getAlbumName(),
+                    song.getGenre(), song.getLength(), parseNumber(song.getTrack()), parseNumber(song.getDiscNumber()));
+        }
+
+        /**
+         * Copies a song from another store without materializing it.
+         */
+        public Builder add(SongStore store, int ordinal) {
+            return add(store.file(ordinal), store.title(ordinal), store.names[ordinal], store.artist(ordinal),
+                    store.album(ordinal), store.genre(ordinal), store.length(ordinal), store.track(ordinal),
+                    store.disc(ordinal));
+        }
+
+        /**
+         * @param name the {@code Name} tag, or {@code null} if it is the file name
+         */
+        public Builder add(String file, String title, String name, String artist, String album, String genre,
+                           int length, int track, int disc) {
+            if (size == files.length) {
+                grow();
+            }
+            files[size] = file;
+            titles[size] = title;
+            names[size] = name;
+            artists[size] = artist;
+            albums[size] = album;
+            genres[size] = genre;
+            lengths[size] = length;
+            tracks[size] = track;
+            discs[size] = disc;
+            size++;
+            return this;
+        }
+
+        public SongStore build() {
+            int[] order = sortedOrder();
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> pool = new ArrayList<>();
+
+            int[] directoryIds = new int[size];
+            String[] fileNames = new String[size];
+            String[] sortedTitles = new String[size];
+            String[] sortedNames = new String[size];
+            int[] artistIds = new int[size];
+            int[] albumIds = new int[size];
+            int[] genreIds = new int[size];
+            int[] sortedLengths = new int[size];
+            int[] sortedTracks = new int[size];
+            int[] sortedDiscs = new int[size];
+
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                int row = order[ordinal];
+                String file = files[row];
+                int separator = file.lastIndexOf('/');
+                String fileName = file.substring(separator + 1);
+
+                directoryIds[ordinal] = intern(separator >= 0 ? file.substring(0, separator) : "", ids, pool);
+                fileNames[ordinal] = fileName;
+                sortedTitles[ordinal] = titles[row];
+                sortedNames[ordinal] = fileName.equals(names[row]) ? null : names[row];
+                artistIds[ordinal] = intern(artists[row], ids, pool);
+                albumIds[ordinal] = intern(albums[row], ids, pool);
+                genreIds[ordinal] = intern(genres[row], ids, pool);
+                sortedLengths[ordinal] = lengths[row];
+                sortedTracks[ordinal] = tracks[row];
+                sortedDiscs[ordinal] = discs[row];
+            }
+
+            return new SongStore(pool.toArray(String[]::new), directoryIds, fileNames, sortedTitles, sortedNames,
+                    artistIds, albumIds, genreIds, sortedLengths, sortedTracks, sortedDiscs);
+        }
+
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            Arrays.setAll(order, i -> i);
+
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = files[i - 1].compareTo(files[i]) <= 0;
+            }
+            if (sorted) {
+                return order;
+            }
+
+            Integer[] boxed = new Integer[size];
+            Arrays.setAll(boxed, i -> i);
+            Arrays.sort(boxed, Comparator.comparing(row -> files[row]));
+            Arrays.setAll(order, i -> boxed[i]);
+            return order;
+        }
+
+        private static int intern(String value, Map<String, Integer> ids, List<String> pool) {
+            if (value == null) {
+                return NONE;
+            }
+            return ids.computeIfAbsent(value, key -> {
+                pool.add(key);
+                return pool.size() - 1;
+            });
+        }
+
+        private void grow() {
+            int capacity = files.length * 2;
+            files = Arrays.copyOf(files, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            names = Arrays.copyOf(names, capacity);
+            artists = Arrays.copyOf(artists, capacity);
+            albums = Arrays.copyOf(albums, capacity);
+            genres = Arrays.copyOf(genres, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            tracks = Arrays.copyOf(tracks, capacity);
+            discs = Arrays.copyOf(discs, capacity);
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+
+/**
+ * Flyweight over one song of a {@link SongStore}: two fields, created on demand and read through to
+ * the store's columns. Grids key rows by {@link #getFile()}.
+ */
+public record SongView(SongStore store, int ordinal) {
+
+    public String getFile() {
+        return store.file(ordinal);
+    }
+
+    public String getName() {
+        return store.name(ordinal);
+    }
+
+    public String getTitle() {
+        return store.title(ordinal);
+    }
+
+    /**
+     * The title, or the name for untagged songs.
+     */
+    public String getDisplayTitle() {
+        String title = store.title(ordinal);
+        return title != null ? title : store.name(ordinal);
+    }
+
+    public String getArtistName() {
+        return store.artist(ordinal);
+    }
+
+    public String getAlbumName() {
+        return store.album(ordinal);
+    }
+
+    public String getGenre() {
+        return store.genre(ordinal);
+    }
+
+    public int getLength() {
+        return store.length(ordinal);
+    }
+
+    public int getTrack() {
+        return store.track(ordinal);
+    }
+
+    public int getDisc() {
+        return store.disc(ordinal);
+    }
+
+    public MPDSong toSong() {
+        return store.song(ordinal);
+    }
+
+}
@@ -0,0 +1,44 @@
+package uk.humbkr.jmpc.library;
+
+import java.util.Optional;
+
+/**
+ * The orders the library can be sorted in, see {@link SortOrders}.
+ */
+public enum SortKey {
+
+    /** Title, then artist */
+    TITLE("title"),
+
+    /** Artist, then album, disc, track and title */
+    ARTIST("artist"),
+
+    /** Album, then its directory, disc, track and title */
+    ALBUM("album"),
+
+    /** Length, then title */
+    DURATION("duration");
+
+    private final String property;
+
+    SortKey(String property) {
+        this.property = property;
+    }
+
+    /**
+     * The grid's sort property for this order.
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    public static Optional<SortKey> fromProperty(String property) {
+        for (SortKey key : values()) {
+            if (key.property.equals(property)) {
+                return Optional.of(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,233 @@
+package uk.humbkr.jmpc.library;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Every {@link SortKey} order of a {@link SongStore}, computed once per library version.
+ * <p>
+ * Strings are compared with a {@link Collator} for the locale, ignoring case and a leading
+ * {@code "The "}, and songs without the tag come last, in either direction. Each distinct artist and album is collated
+ * once through the store's pool, each title once per song; the orders themselves are then sorted
+ * on the resulting integer ranks. Each order is kept as a permutation (position to ordinal) and its
+ * inverse (ordinal to position), so a sorted page is an array lookup and a subset such as search
+ * matches is sorted as plain {@code int}s.
+ */
+public final class SortOrders {
+
+    private static final String ARTICLE = "the ";
+
+    private static final int MISSING = Integer.MAX_VALUE;
+
+    private final Map<SortKey, int[]> permutations;
+
+    private final Map<SortKey, int[]> positions;
+
+    // Songs having the key's tag, which lead the permutation; only they are reversed when descending
+    private final Map<SortKey, Integer> tagged;
+
+    private SortOrders(Map<SortKey, int[]> permutations, Map<SortKey, int[]> positions, Map<SortKey, Integer> tagged) {
+        this.permutations = permutations;
+        this.positions = positions;
+        this.tagged = tagged;
+    }
+
+    public static SortOrders build(SongStore store) {
+        return build(store, Locale.getDefault());
+    }
+
+    public static SortOrders build(SongStore store, Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY);
+
+        int size = store.size();
+        int[] poolRanks = poolRanks(store, collator);
+        int[] titleRanks = collatedRanks(size, ordinal -> displayTitle(store, ordinal), collator);
+        int[] artists = new int[size];
+        int[] albums = new int[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            artists[ordinal] = rankOf(poolRanks, store.artistId(ordinal));
+            albums[ordinal] = rankOf(poolRanks, store.albumId(ordinal));
+        }
+
+        Comparator<Integer> byTrack = Comparator.<Integer>comparingInt(store::disc)
+                .thenComparingInt(store::track)
+                .thenComparingInt(ordinal -> titleRanks[ordinal]);
+
+        Map<SortKey, Comparator<Integer>> comparators = new EnumMap<>(SortKey.class);
+        comparators.put(SortKey.TITLE, Comparator.<Integer>comparingInt(ordinal -> titleRanks[ordinal])
+                .thenComparingInt(ordinal -> artists[ordinal]));
+        comparators.put(SortKey.ARTIST, Comparator.<Integer>comparingInt(ordinal -> artists[ordinal])
+                .thenComparingInt(ordinal -> albums[ordinal])
+                .thenComparing(byTrack));
+        comparators.put(SortKey.ALBUM, Comparator.<Integer>comparingInt(ordinal -> albums[ordinal])
+                .thenComparingInt(store::directoryId)
+                .thenComparing(byTrack));
+        comparators.put(SortKey.DURATION, Comparator.<Integer>comparingInt(store::length)
+                .thenComparingInt(ordinal -> titleRanks[ordinal]));
+
+        Map<SortKey, Integer> tagged = new EnumMap<>(SortKey.class);
+        tagged.put(SortKey.TITLE, countTagged(titleRanks));
+        tagged.put(SortKey.ARTIST, countTagged(artists));
+        tagged.put(SortKey.ALBUM, countTagged(albums));
+        tagged.put(SortKey.DURATION, size);
+
+        Map<SortKey, int[]> permutations = new EnumMap<>(SortKey.class);
+        Map<SortKey, int[]> positions = new EnumMap<>(SortKey.class);
+        comparators.forEach((key, comparator) -> {
+            // Ties keep library order
+            int[] permutation = sorted(size, comparator.thenComparingInt(Integer::intValue));
+            int[] inverse = new int[size];
+            for (int position = 0; position < size; position++) {
+                inverse[permutation[position]] = position;
+            }
+            permutations.put(key, permutation);
+            positions.put(key, inverse);
+        });
+        return new SortOrders(permutations, positions, tagged);
+    }
+
+    public int size() {
+        return permutations.get(SortKey.TITLE).length;
+    }
+
+    /**
+     * The ordinal of the song at a position of the whole library in this order.
+     */
+    public int ordinalAt(SortKey key, boolean descending, int position) {
+        int[] permutation = permutations.get(key);
+        int taggedCount = tagged.get(key);
+        return permutation[descending && position < taggedCount ? taggedCount - 1 - position : position];
+    }
+
+    /**
+     * The ordinals, such as search matches, rearranged in this order.
+     */
+    public int[] sort(int[] ordinals, SortKey key, boolean descending) {
+        int[] inverse = positions.get(key);
+        int[] permutation = permutations.get(key);
+
+        int[] sortedPositions = new int[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            sortedPositions[i] = inverse[ordinals[i]];
+        }
+        Arrays.sort(sortedPositions);
+
+        // Descending reverses the tagged positions only, the untagged ones stay behind them
+        int taggedMatches = 0;
+        if (descending) {
+            int taggedCount = tagged.get(key);
+            while (taggedMatches < sortedPositions.length && sortedPositions[taggedMatches] < taggedCount) {
+                taggedMatches++;
+            }
+        }
+
+        int[] sorted = new int[ordinals.length];
+        for (int i = 0; i < sorted.length; i++) {
+            int position = sortedPositions[i < taggedMatches ? taggedMatches - 1 - i : i];
+            sorted[i] = permutation[position];
+        }
+        return sorted;
+    }
+
+    /**
+     * Ranks the pool strings used as artists or albums by collation; directories and genres share the
+     * pool but are never sorted on, so they are left out.
+     */
+    private static int[] poolRanks(SongStore store, Collator collator) {
+        boolean[] used = new boolean[store.poolSize()];
+        for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+            markUsed(used, store.artistId(ordinal));
+            markUsed(used, store.albumId(ordinal));
+        }
+
+        int[] ids = IntStream.range(0, used.length).filter(id -> used[id]).toArray();
+        int[] ranks = collatedRanks(ids.length, i -> store.pooled(ids[i]), collator);
+        int[] poolRanks = new int[used.length];
+        Arrays.fill(poolRanks, MISSING);
+        for (int i = 0; i < ids.length; i++) {
+            poolRanks[ids[i]] = ranks[i];
+        }
+        return poolRanks;
+    }
+
+    private static void markUsed(boolean[] used, int id) {
+        if (id != SongStore.NONE) {
+            used[id] = true;
+        }
+    }
+
+    /**
+     * Ranks strings by collation, equal ranks for equal keys and {@code MISSING} for nulls.
+     */
+    private static int[] collatedRanks(int count, IntFunction<String> values, Collator collator) {
+        CollationKey[] keys = new CollationKey[count];
+        for (int i = 0; i < count; i++) {
+            String value = values.apply(i);
+            keys[i] = value != null ? collator.getCollationKey(withoutArticle(value)) : null;
+        }
+
+        int[] order = sorted(count, Comparator.<Integer, CollationKey>comparing(
+                i -> keys[i], Comparator.nullsLast(Comparator.naturalOrder())));
+        int[] ranks = new int[count];
+        int rank = 0;
+        for (int position = 0; position < count; position++) {
+            int index = order[position];
+            if (keys[index] == null) {
+                ranks[index] = MISSING;
+                continue;
+            }
+            if (position > 0 && keys[order[position - 1]] != null
+                    && keys[order[position - 1]].compareTo(keys[index]) != 0) {
+                rank++;
+            }
+            ranks[index] = rank;
+        }
+        return ranks;
+    }
+
+    private static int countTagged(int[] ranks) {
+        int count = 0;
+        for (int rank : ranks) {
+            if (rank != MISSING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int[] sorted(int count, Comparator<Integer> comparator) {
+        Integer[] boxed = new Integer[count];
+        Arrays.setAll(boxed, i -> i);
+        Arrays.parallelSort(boxed, comparator);
+
+        int[] order = new int[count];
+        Arrays.setAll(order, i -> boxed[i]);
+        return order;
+    }
+
+    private static int rankOf(int[] poolRanks, int id) {
+        return id == SongStore.NONE ? MISSING : poolRanks[id];
+    }
+
+    private static String displayTitle(SongStore store, int ordinal) {
+        String title = store.title(ordinal);
+        return title != null ? title : store.name(ordinal);
+    }
+
+    static String withoutArticle(String value) {
+        String trimmed = value.strip();
+        if (trimmed.length() > ARTICLE.length() && trimmed.regionMatches(true, 0, ARTICLE, 0, ARTICLE.length())) {
+            return trimmed.substring(ARTICLE.length());
+        }
+        return trimmed;
+    }
+
+}
@@ -0,0 +1,44 @@
+package uk.humbkr.jmpc.library;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Case and accent folding used for library search, so "Beyoncé" matches "beyonce".
+ */
+public final class TextFolding {
+
+    private TextFolding() {
+    }
+
+    public static String fold(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (isAscii(lower)) {
+            return lower;
+        }
+
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
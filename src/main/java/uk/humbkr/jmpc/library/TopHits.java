@@ -0,0 +1,98 @@
+package uk.humbkr.jmpc.library;
+
+/**
+ * Bounded min-heap of the best scored ordinals, kept in primitive arrays.
+ * <p>
+ * The root is the worst hit kept, so a candidate is compared once and only enters by replacing it.
+ * Equal scores are ranked in library order.
+ */
+final class TopHits {
+
+    private final float[] scores;
+
+    private final int[] ordinals;
+
+    private int size;
+
+    TopHits(int capacity) {
+        scores = new float[capacity];
+        ordinals = new int[capacity];
+    }
+
+    void offer(float score, int ordinal) {
+        if (size < scores.length) {
+            scores[size] = score;
+            ordinals[size] = ordinal;
+            siftUp(size++);
+        } else if (isBetter(score, ordinal, 0)) {
+            scores[0] = score;
+            ordinals[0] = ordinal;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopHits other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ordinals[i]);
+        }
+    }
+
+    /**
+     * The ordinals, best first. Empties the heap.
+     */
+    int[] drainBestFirst() {
+        int[] best = new int[size];
+        for (int i = best.length - 1; i >= 0; i--) {
+            best[i] = ordinals[0];
+            size--;
+            scores[0] = scores[size];
+            ordinals[0] = ordinals[size];
+            siftDown(0);
+        }
+        return best;
+    }
+
+    private boolean isBetter(float score, int ordinal, int slot) {
+        return score > scores[slot] || (score == scores[slot] && ordinal < ordinals[slot]);
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!isBetter(scores[parent], ordinals[parent], slot)) {
+                return;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int worst = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if (left < size && isBetter(scores[worst], ordinals[worst], left)) {
+                worst = left;
+            }
+            if (right < size && isBetter(scores[worst], ordinals[worst], right)) {
+                worst = right;
+            }
+            if (worst == slot) {
+                return;
+            }
+            swap(slot, worst);
+            slot = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int ordinal = ordinals[a];
+        ordinals[a] = ordinals[b];
+        ordinals[b] = ordinal;
+    }
+
+}
@@ -0,0 +1,85 @@
+package uk.humbkr.jmpc.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.server.MPDConnectionException;
+import org.springframework.stereotype.Component;
+import uk.humbkr.jmpc.mpd.MpdConnectionObserver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every command sent over an MPD connection: latency per command, errors, bytes received
+ * and connection attempts. {@code idle} only counts towards traffic, its duration is waiting time.
+ */
+@Component
+public class MpdMetrics implements MpdConnectionObserver {
+
+    private static final String IDLE = "idle";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+
+    private final Counter bytesReceived;
+
+    private final Counter connections;
+
+    private final Counter connectionFailures;
+
+    public MpdMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.bytesReceived = Counter.builder("mpd.bytes.received")
+                .description("Response bytes read from MPD")
+                .baseUnit("bytes")
+                .register(registry);
+        this.connections = Counter.builder("mpd.connections")
+                .description("Connections opened to MPD, including reconnects")
+                .tag("result", "success")
+                .register(registry);
+        this.connectionFailures = Counter.builder("mpd.connections")
+                .description("Connections opened to MPD, including reconnects")
+                .tag("result", "failure")
+                .register(registry);
+    }
+
+    @Override
+    public void connected(boolean success) {
+        (success ? connections : connectionFailures).increment();
+    }
+
+    @Override
+    public void commandCompleted(String command, long durationNanos, long bytes, MPDException error) {
+        bytesReceived.increment(bytes);
+        if (!IDLE.equals(command)) {
+            timers.computeIfAbsent(command, this::timer).record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+        if (error != null) {
+            String type = error instanceof MPDConnectionException ? "io" : "ack";
+            errors.computeIfAbsent(command + ' ' + type, key -> errorCounter(command, type)).increment();
+        }
+    }
+
+    private Timer timer(String command) {
+        return Timer.builder("mpd.command")
+                .description("Round trip time of MPD commands")
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter errorCounter(String command, String type) {
+        return Counter.builder("mpd.command.errors")
+                .description("MPD commands that failed with an ACK or an I/O error")
+                .tag("command", command)
+                .tag("type", type)
+                .register(registry);
+    }
+
+}
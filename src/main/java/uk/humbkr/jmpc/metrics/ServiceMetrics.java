@@ -0,0 +1,156 @@
+package uk.humbkr.jmpc.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.service.AlbumArtService;
+import uk.humbkr.jmpc.service.LibrarySearchService;
+import uk.humbkr.jmpc.service.LibraryService;
+import uk.humbkr.jmpc.service.MpdService;
+import uk.humbkr.jmpc.service.MpdStatusHub;
+import uk.humbkr.jmpc.service.UiTaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Exposes the state of the shared services: connection pool, library snapshot and search, album art, pushes
+ * and background tasks.
+ */
+@Component
+public class ServiceMetrics implements MeterBinder {
+
+    private final MpdService mpdService;
+
+    private final MpdStatusHub statusHub;
+
+    private final LibraryService libraryService;
+
+    private final UiTaskScheduler scheduler;
+
+    private final AlbumArtService albumArtService;
+
+    private final LibrarySearchService searchService;
+
+    public ServiceMetrics(MpdService mpdService, MpdStatusHub statusHub, LibraryService libraryService,
+                          UiTaskScheduler scheduler, AlbumArtService albumArtService,
+                          LibrarySearchService searchService) {
+        this.mpdService = mpdService;
+        this.statusHub = statusHub;
+        this.libraryService = libraryService;
+        this.scheduler = scheduler;
+        this.albumArtService = albumArtService;
+        this.searchService = searchService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Connection pool
+        Gauge.builder("mpd.pool.connections", mpdService, service -> service.getPoolStats().active())
+                .description("Pooled MPD connections")
+                .tag("state", "active")
+                .register(registry);
+        Gauge.builder("mpd.pool.connections", mpdService, service -> service.getPoolStats().idle())
+                .description("Pooled MPD connections")
+                .tag("state", "idle")
+                .register(registry);
+        Gauge.builder("mpd.pool.max", mpdService, service -> service.getPoolStats().maxSize())
+                .description("Maximum number of pooled MPD connections")
+                .register(registry);
+        Gauge.builder("mpd.pool.pending", mpdService, service -> service.getPoolStats().waiting())
+                .description("Threads waiting for a pooled MPD connection")
+                .register(registry);
+        FunctionCounter.builder("mpd.pool.timeouts", mpdService, service -> service.getPoolStats().waitTimeouts())
+                .description("Leases that gave up waiting for a pooled MPD connection")
+                .register(registry);
+
+        // Library snapshot
+        FunctionCounter.builder("library.cache.requests", libraryService, LibraryService::getCacheHits)
+                .description("Library refresh checks, by whether the current snapshot was still valid")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("library.cache.requests", libraryService, LibraryService::getCacheMisses)
+                .description("Library refresh checks, by whether the current snapshot was still valid")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("library.cache.hit.ratio", libraryService, ServiceMetrics::hitRatio)
+                .description("Share of library refresh checks answered by the current snapshot")
+                .register(registry);
+        Gauge.builder("library.snapshot.age", libraryService, service -> age(service.getSnapshot()))
+                .description("Time since the current library snapshot was built")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("library.snapshot.songs", libraryService, service -> service.getSnapshot().size())
+                .description("Songs in the current library snapshot")
+                .register(registry);
+
+        // Search pages cached from MPD
+        FunctionCounter.builder("library.search.requests", searchService, LibrarySearchService::getCacheHits)
+                .description("Remote search pages, by whether they were cached")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("library.search.requests", searchService, LibrarySearchService::getCacheMisses)
+                .description("Remote search pages, by whether they were cached")
+                .tag("result", "miss")
+                .register(registry);
+
+        // Album art
+        FunctionCounter.builder("albumart.requests", albumArtService, service -> service.getCache().getMemoryHits())
+                .description("Thumbnail lookups, by where they were found")
+                .tag("result", "memory")
+                .register(registry);
+        FunctionCounter.builder("albumart.requests", albumArtService, service -> service.getCache().getDiskHits())
+                .description("Thumbnail lookups, by where they were found")
+                .tag("result", "disk")
+                .register(registry);
+        FunctionCounter.builder("albumart.requests", albumArtService, service -> service.getCache().getMisses())
+                .description("Thumbnail lookups, by where they were found")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("albumart.fetches", albumArtService, AlbumArtService::getFetchCount)
+                .description("Covers downloaded from MPD")
+                .register(registry);
+        Gauge.builder("albumart.cache.size", albumArtService, service -> service.getCache().getMemoryBytes())
+                .description("Bytes of thumbnails cached")
+                .tag("tier", "memory")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("albumart.cache.size", albumArtService, service -> service.getCache().getDiskBytes())
+                .description("Bytes of thumbnails cached")
+                .tag("tier", "disk")
+                .baseUnit("bytes")
+                .register(registry);
+
+        // Pushes to the browser
+        FunctionCounter.builder("ui.pushes", statusHub, MpdStatusHub::getPushCount)
+                .description("Updates pushed to UIs")
+                .tag("topic", "status")
+                .register(registry);
+        FunctionCounter.builder("ui.pushes", libraryService, LibraryService::getPushCount)
+                .description("Updates pushed to UIs")
+                .tag("topic", "library")
+                .register(registry);
+
+        // Background work
+        Gauge.builder("ui.tasks.live", scheduler, UiTaskScheduler::getLiveTaskCount)
+                .description("Background UI tasks not yet finished or cancelled")
+                .register(registry);
+    }
+
+    private static double hitRatio(LibraryService service) {
+        long hits = service.getCacheHits();
+        long total = hits + service.getCacheMisses();
+        return total > 0 ? (double) hits / total : Double.NaN;
+    }
+
+    private static double age(LibrarySnapshot snapshot) {
+        if (snapshot.version() < 0) {
+            return Double.NaN;
+        }
+        return Duration.between(snapshot.loadedAt(), Instant.now()).toMillis() / 1000.0;
+    }
+
+}
@@ -0,0 +1,35 @@
+package uk.humbkr.jmpc.metrics;
+
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts UIs from creation until they detach, i.e. open browser tabs.
+ */
+@Component
+public class UiMetrics implements VaadinServiceInitListener, MeterBinder {
+
+    private final AtomicInteger activeUis = new AtomicInteger();
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addUIInitListener(uiEvent -> {
+            activeUis.incrementAndGet();
+            uiEvent.getUI().addDetachListener(detachEvent -> activeUis.decrementAndGet());
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ui.active", activeUis, AtomicInteger::get)
+                .description("UIs currently attached")
+                .register(registry);
+    }
+
+}
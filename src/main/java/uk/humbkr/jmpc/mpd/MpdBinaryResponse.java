@@ -0,0 +1,18 @@
+package uk.humbkr.jmpc.mpd;
+
+/**
+ * One chunk of a binary response such as {@code albumart} or {@code readpicture}.
+ *
+ * @param size total size of the binary object, {@code 0} if the server sent none
+ * @param type MIME type if the server reported one, otherwise {@code null}
+ * @param data the bytes of this chunk
+ */
+public record MpdBinaryResponse(long size, String type, byte[] data) {
+
+    public static final MpdBinaryResponse NONE = new MpdBinaryResponse(0, null, new byte[0]);
+
+    public boolean isEmpty() {
+        return data.length == 0;
+    }
+
+}
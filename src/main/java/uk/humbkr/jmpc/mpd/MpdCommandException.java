@@ -0,0 +1,72 @@
+package uk.humbkr.jmpc.mpd;
+
+import org.bff.javampd.MPDException;
+
+/**
+ * An {@code ACK} error returned by the MPD server for a command.
+ */
+public class MpdCommandException extends MPDException {
+
+    private final int errorCode;
+
+    private final int commandListIndex;
+
+    private final String command;
+
+    public MpdCommandException(int errorCode, int commandListIndex, String command, String message) {
+        super("MPD error " + errorCode + " in '" + command + "': " + message);
+        this.errorCode = errorCode;
+        this.commandListIndex = commandListIndex;
+        this.command = command;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Index of the failing command inside a command list, {@code 0} for single commands.
+     */
+    public int getCommandListIndex() {
+        return commandListIndex;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Parses an {@code ACK [error@index] {command} message} line.
+     */
+    static MpdCommandException parse(String ackLine) {
+        int errorCode = -1;
+        int index = 0;
+        String command = "";
+        String message = ackLine;
+
+        int open = ackLine.indexOf('[');
+        int at = ackLine.indexOf('@', open);
+        int close = ackLine.indexOf(']', at);
+        if (open >= 0 && at > open && close > at) {
+            errorCode = parseIntOrDefault(ackLine.substring(open + 1, at), -1);
+            index = parseIntOrDefault(ackLine.substring(at + 1, close), 0);
+
+            int braceOpen = ackLine.indexOf('{', close);
+            int braceClose = ackLine.indexOf('}', braceOpen);
+            if (braceOpen >= 0 && braceClose > braceOpen) {
+                command = ackLine.substring(braceOpen + 1, braceClose);
+                message = ackLine.substring(braceClose + 1).trim();
+            }
+        }
+        return new MpdCommandException(errorCode, index, command, message);
+    }
+
+    private static int parseIntOrDefault(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
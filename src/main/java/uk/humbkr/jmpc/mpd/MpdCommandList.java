@@ -0,0 +1,66 @@
+package uk.humbkr.jmpc.mpd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builder for queue edits sent as one {@code command_list_ok_begin … command_list_end} block.
+ */
+public final class MpdCommandList {
+
+    private final List<String> commands = new ArrayList<>();
+
+    public MpdCommandList add(String uri) {
+        commands.add("add " + MpdConnection.quote(uri));
+        return this;
+    }
+
+    /**
+     * Adds the song at the given queue position; the result carries the new song id.
+     */
+    public MpdCommandList addId(String uri, int position) {
+        commands.add("addid " + MpdConnection.quote(uri) + " " + position);
+        return this;
+    }
+
+    public MpdCommandList deleteId(int songId) {
+        commands.add("deleteid " + songId);
+        return this;
+    }
+
+    /**
+     * Deletes queue positions {@code start} (inclusive) to {@code end} (exclusive).
+     */
+    public MpdCommandList delete(int start, int end) {
+        commands.add("delete " + start + ":" + end);
+        return this;
+    }
+
+    public MpdCommandList moveId(int songId, int to) {
+        commands.add("moveid " + songId + " " + to);
+        return this;
+    }
+
+    public MpdCommandList move(int from, int to) {
+        commands.add("move " + from + " " + to);
+        return this;
+    }
+
+    public MpdCommandList clear() {
+        commands.add("clear");
+        return this;
+    }
+
+    public List<String> getCommands() {
+        return List.copyOf(commands);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+}
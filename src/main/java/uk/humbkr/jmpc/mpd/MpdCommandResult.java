@@ -0,0 +1,51 @@
+package uk.humbkr.jmpc.mpd;
+
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+/**
+ * Outcome of one command inside a command list.
+ *
+ * @param command the command as sent
+ * @param status  whether the command succeeded, failed or was never executed
+ * @param lines   response lines of a successful command
+ * @param error   the server error of a failed command, otherwise {@code null}
+ */
+public record MpdCommandResult(String command, Status status, List<String> lines, MpdCommandException error) {
+
+    public enum Status {
+        OK,
+        FAILED,
+        /**
+         * MPD stops executing a command list at the first error.
+         */
+        SKIPPED
+    }
+
+    static MpdCommandResult ok(String command, List<String> lines) {
+        return new MpdCommandResult(command, Status.OK, List.copyOf(lines), null);
+    }
+
+    static MpdCommandResult failed(String command, MpdCommandException error) {
+        return new MpdCommandResult(command, Status.FAILED, List.of(), error);
+    }
+
+    public static MpdCommandResult skipped(String command) {
+        return new MpdCommandResult(command, Status.SKIPPED, List.of(), null);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    /**
+     * The song id returned by {@code addid}.
+     */
+    public OptionalInt songId() {
+        Map<String, String> values = MpdResponses.toMap(lines);
+        int id = MpdResponses.parseInt(values.get("Id"), -1);
+        return id >= 0 ? OptionalInt.of(id) : OptionalInt.empty();
+    }
+
+}
@@ -0,0 +1,363 @@
+package uk.humbkr.jmpc.mpd;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.server.MPDConnectionException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A single raw connection speaking the MPD text protocol.
+ * <p>
+ * Commands are serialized per connection. {@link #close()} may be called from any thread and
+ * unblocks a pending {@link #idle(Collection)}.
+ */
+@Slf4j
+public class MpdConnection implements Closeable {
+
+    private static final String GREETING_PREFIX = "OK MPD ";
+
+    private static final String OK = "OK";
+
+    private static final String ACK_PREFIX = "ACK ";
+
+    private static final String LIST_OK = "list_OK";
+
+    private static final String COMMAND_LIST = "command_list";
+
+    private static final String IDLE = "idle";
+
+    private final Socket socket;
+
+    private final InputStream in;
+
+    private final OutputStream out;
+
+    private final String protocolVersion;
+
+    private final MpdConnectionObserver observer;
+
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
+
+    private volatile boolean broken;
+
+    // Bytes read since the current command was sent
+    private long bytesReceived;
+
+    private MpdConnection(Socket socket, MpdConnectionObserver observer) throws IOException {
+        this.socket = socket;
+        this.observer = observer;
+        this.in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+        this.out = socket.getOutputStream();
+
+        String greeting = readLine();
+        if (!greeting.startsWith(GREETING_PREFIX)) {
+            throw new IOException("Unexpected MPD greeting: " + greeting);
+        }
+        this.protocolVersion = greeting.substring(GREETING_PREFIX.length());
+    }
+
+    public static MpdConnection open(String host, int port, int timeoutMillis) throws MPDConnectionException {
+        return open(host, port, timeoutMillis, MpdConnectionObserver.NONE);
+    }
+
+    public static MpdConnection open(String host, int port, int timeoutMillis, MpdConnectionObserver observer)
+            throws MPDConnectionException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            MpdConnection connection = new MpdConnection(socket, observer);
+            observer.connected(true);
+            return connection;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            observer.connected(false);
+            throw new MPDConnectionException("Failed to connect to MPD server at " + host + ":" + port, e);
+        }
+    }
+
+    public String getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * @return {@code false} once the socket was closed or an I/O error left the stream in an unknown state
+     */
+    public boolean isOpen() {
+        return !broken && !socket.isClosed();
+    }
+
+    /**
+     * Sends a single command and returns the response lines without the trailing {@code OK}.
+     */
+    public synchronized List<String> execute(String command) throws MPDException {
+        long start = begin();
+        try {
+            send(command);
+            List<String> lines = readResponse();
+            complete(commandName(command), start, null);
+            return lines;
+        } catch (MpdCommandException e) {
+            complete(commandName(command), start, e);
+            throw e;
+        } catch (IOException e) {
+            broken = true;
+            MPDConnectionException error = new MPDConnectionException("I/O error while executing '" + command + "'", e);
+            complete(commandName(command), start, error);
+            throw error;
+        }
+    }
+
+    /**
+     * Sends a command answering with a binary chunk, such as {@code albumart}, and reads the chunk.
+     *
+     * @return the chunk, or {@link MpdBinaryResponse#NONE} if the server sent no binary data
+     */
+    public synchronized MpdBinaryResponse executeBinary(String command) throws MPDException {
+        long start = begin();
+        try {
+            send(command);
+            MpdBinaryResponse response = readBinaryResponse();
+            complete(commandName(command), start, null);
+            return response;
+        } catch (MpdCommandException e) {
+            complete(commandName(command), start, e);
+            throw e;
+        } catch (IOException e) {
+            broken = true;
+            MPDConnectionException error = new MPDConnectionException("I/O error while executing '" + command + "'", e);
+            complete(commandName(command), start, error);
+            throw error;
+        }
+    }
+
+    /**
+     * Sends the commands as a single {@code command_list_ok_begin} block, costing one round trip.
+     *
+     * @return one result per command; MPD skips every command after the first failing one
+     */
+    public synchronized List<MpdCommandResult> executeList(List<String> commands) throws MPDException {
+        if (commands.isEmpty()) {
+            return List.of();
+        }
+
+        StringBuilder request = new StringBuilder("command_list_ok_begin\n");
+        for (String command : commands) {
+            request.append(command).append('\n');
+        }
+        request.append("command_list_end");
+
+        long start = begin();
+        try {
+            send(request.toString());
+            List<MpdCommandResult> results = readListResponse(commands);
+            MpdCommandResult last = results.get(results.size() - 1);
+            complete(COMMAND_LIST, start, last.isSuccess() ? null : firstError(results));
+            return results;
+        } catch (IOException e) {
+            broken = true;
+            MPDConnectionException error =
+                    new MPDConnectionException("I/O error while executing a command list of " + commands.size(), e);
+            complete(COMMAND_LIST, start, error);
+            throw error;
+        }
+    }
+
+    /**
+     * Blocks until one of the given subsystems changes on the server.
+     *
+     * @return the subsystems reported as changed
+     */
+    public synchronized Set<MpdSubsystem> idle(Collection<MpdSubsystem> subsystems) throws MPDException {
+        StringBuilder command = new StringBuilder("idle");
+        for (MpdSubsystem subsystem : subsystems) {
+            command.append(' ').append(subsystem.getProtocolName());
+        }
+
+        List<String> lines;
+        long start = begin();
+        try {
+            int timeout = socket.getSoTimeout();
+            socket.setSoTimeout(0);
+            try {
+                send(command.toString());
+                lines = readResponse();
+            } finally {
+                if (!socket.isClosed()) {
+                    socket.setSoTimeout(timeout);
+                }
+            }
+        } catch (IOException e) {
+            broken = true;
+            MPDConnectionException error = new MPDConnectionException("I/O error while waiting for MPD changes", e);
+            complete(IDLE, start, error);
+            throw error;
+        }
+        complete(IDLE, start, null);
+
+        Set<MpdSubsystem> changed = EnumSet.noneOf(MpdSubsystem.class);
+        for (String line : lines) {
+            if (line.startsWith("changed: ")) {
+                MpdSubsystem.fromProtocolName(line.substring("changed: ".length())).ifPresent(changed::add);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        closeQuietly(socket);
+    }
+
+    /**
+     * Quotes a command argument, escaping backslashes and double quotes.
+     */
+    public static String quote(String argument) {
+        StringBuilder quoted = new StringBuilder(argument.length() + 2).append('"');
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\');
+            }
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    private long begin() {
+        bytesReceived = 0;
+        return System.nanoTime();
+    }
+
+    private void complete(String command, long start, MPDException error) {
+        observer.commandCompleted(command, System.nanoTime() - start, bytesReceived, error);
+    }
+
+    private static String commandName(String command) {
+        int separator = command.indexOf(' ');
+        return separator >= 0 ? command.substring(0, separator) : command;
+    }
+
+    private static MPDException firstError(List<MpdCommandResult> results) {
+        for (MpdCommandResult result : results) {
+            if (result.error() != null) {
+                return result.error();
+            }
+        }
+        return null;
+    }
+
+    private void send(String command) throws IOException {
+        out.write(command.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+
+    private List<String> readResponse() throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line = readLine();
+            if (OK.equals(line)) {
+                return lines;
+            }
+            if (line.startsWith(ACK_PREFIX)) {
+                throw MpdCommandException.parse(line);
+            }
+            lines.add(line);
+        }
+    }
+
+    private MpdBinaryResponse readBinaryResponse() throws IOException {
+        long size = 0;
+        String type = null;
+        while (true) {
+            String line = readLine();
+            if (OK.equals(line)) {
+                return MpdBinaryResponse.NONE;
+            }
+            if (line.startsWith(ACK_PREFIX)) {
+                throw MpdCommandException.parse(line);
+            }
+            if (line.startsWith("size: ")) {
+                size = MpdResponses.parseInt(line.substring("size: ".length()), 0);
+            } else if (line.startsWith("type: ")) {
+                type = line.substring("type: ".length());
+            } else if (line.startsWith("binary: ")) {
+                int length = MpdResponses.parseInt(line.substring("binary: ".length()), 0);
+                byte[] data = in.readNBytes(length);
+                if (data.length < length || in.read() != '\n') {
+                    throw new IOException("Truncated binary response");
+                }
+                bytesReceived += length + 1;
+
+                List<String> trailing = readResponse();
+                if (!trailing.isEmpty()) {
+                    throw new IOException("Unexpected lines after binary response: " + trailing);
+                }
+                return new MpdBinaryResponse(size, type, data);
+            }
+        }
+    }
+
+    private List<MpdCommandResult> readListResponse(List<String> commands) throws IOException {
+        List<MpdCommandResult> results = new ArrayList<>(commands.size());
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line = readLine();
+            if (LIST_OK.equals(line)) {
+                results.add(MpdCommandResult.ok(commands.get(results.size()), lines));
+                lines.clear();
+            } else if (OK.equals(line)) {
+                return results;
+            } else if (line.startsWith(ACK_PREFIX)) {
+                results.add(MpdCommandResult.failed(commands.get(results.size()), MpdCommandException.parse(line)));
+                while (results.size() < commands.size()) {
+                    results.add(MpdCommandResult.skipped(commands.get(results.size())));
+                }
+                return results;
+            } else {
+                lines.add(line);
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        lineBuffer.reset();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed by MPD server");
+            }
+            if (b == '\n') {
+                bytesReceived += lineBuffer.size() + 1;
+                return lineBuffer.toString(StandardCharsets.UTF_8);
+            }
+            lineBuffer.write(b);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Error while closing MPD socket", e);
+        }
+    }
+
+}
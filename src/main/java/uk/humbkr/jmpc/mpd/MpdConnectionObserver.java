@@ -0,0 +1,29 @@
+package uk.humbkr.jmpc.mpd;
+
+import org.bff.javampd.MPDException;
+
+/**
+ * Receives timings and traffic of an {@link MpdConnection}, e.g. to record metrics.
+ * Callbacks run on the thread executing the command and must not block.
+ */
+public interface MpdConnectionObserver {
+
+    MpdConnectionObserver NONE = new MpdConnectionObserver() {
+    };
+
+    /**
+     * @param success {@code false} if the server could not be reached or did not greet as MPD
+     */
+    default void connected(boolean success) {
+    }
+
+    /**
+     * @param command       the command name, e.g. {@code status}, {@code command_list} or {@code idle}
+     * @param durationNanos time from sending the command to reading the end of its response
+     * @param bytesReceived response size including line terminators
+     * @param error         the error the command failed with, otherwise {@code null}
+     */
+    default void commandCompleted(String command, long durationNanos, long bytesReceived, MPDException error) {
+    }
+
+}
@@ -0,0 +1,250 @@
+package uk.humbkr.jmpc.mpd;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.server.MPDConnectionException;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of {@link MpdConnection}s with lease/return semantics.
+ * <p>
+ * Connections idle for longer than the validation interval are pinged before being handed out,
+ * connections idle for longer than the idle timeout are closed by a background evictor, and callers
+ * wait at most {@code maxWait} for a free connection.
+ */
+@Slf4j
+public class MpdConnectionPool implements Closeable {
+
+    private final Supplier<MpdConnection> connectionFactory;
+
+    private final int maxSize;
+
+    private final Duration maxWait;
+
+    private final Duration idleTimeout;
+
+    private final Duration validationInterval;
+
+    private final Semaphore permits;
+
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong waitTimeouts = new AtomicLong();
+
+    // Bumped by clear() so connections leased before it are not returned to the pool
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mpd-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MpdConnectionPool(Supplier<MpdConnection> connectionFactory, int maxSize, Duration maxWait,
+                             Duration idleTimeout, Duration validationInterval) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("MPD pool size must be at least 1");
+        }
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.permits = new Semaphore(maxSize, true);
+
+        long evictionPeriod = Math.max(1000, idleTimeout.toMillis() / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a connection, runs the work on it and returns it to the pool.
+     * Connections left in an unknown state by an I/O error are discarded instead.
+     */
+    public <T> T execute(Function<MpdConnection, T> work) throws MPDException {
+        try (Lease lease = lease()) {
+            return work.apply(lease.connection());
+        }
+    }
+
+    public Lease lease() throws MPDConnectionException {
+        try {
+            if (!permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                waitTimeouts.incrementAndGet();
+                throw new MPDConnectionException("Timed out after " + maxWait.toMillis()
+                        + " ms waiting for an MPD connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MPDConnectionException("Interrupted while waiting for an MPD connection", e);
+        }
+
+        try {
+            // Read first: a clear() while the connection is obtained must leave it stamped as stale
+            int leasedGeneration = generation.get();
+            MpdConnection connection = takeHealthyIdleConnection();
+            if (connection == null) {
+                connection = connectionFactory.get();
+            }
+            activeCount.incrementAndGet();
+            return new Lease(connection, leasedGeneration);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all idle connections, e.g. after the server address changed.
+     * Leased connections are closed when they are returned.
+     */
+    public void clear() {
+        // First, so a lease returned while draining is not put back into the pool
+        generation.incrementAndGet();
+
+        List<IdleConnection> closing;
+        synchronized (idleConnections) {
+            closing = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        closing.forEach(idle -> idle.connection().close());
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        clear();
+    }
+
+    public Stats getStats() {
+        int idle;
+        synchronized (idleConnections) {
+            idle = idleConnections.size();
+        }
+        return new Stats(activeCount.get(), idle, maxSize, permits.getQueueLength(), waitTimeouts.get());
+    }
+
+    private MpdConnection takeHealthyIdleConnection() {
+        while (true) {
+            IdleConnection idle;
+            synchronized (idleConnections) {
+                idle = idleConnections.pollFirst();
+            }
+            if (idle == null) {
+                return null;
+            }
+            if (isHealthy(idle)) {
+                return idle.connection();
+            }
+            idle.connection().close();
+        }
+    }
+
+    private boolean isHealthy(IdleConnection idle) {
+        MpdConnection connection = idle.connection();
+        if (!connection.isOpen()) {
+            return false;
+        }
+        if (System.nanoTime() - idle.returnedAt() < validationInterval.toNanos()) {
+            return true;
+        }
+        try {
+            connection.execute("ping");
+            return true;
+        } catch (MPDException e) {
+            log.debug("Discarding stale MPD connection: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void release(MpdConnection connection, int leasedGeneration) {
+        activeCount.decrementAndGet();
+        try {
+            if (connection.isOpen() && leasedGeneration == generation.get()) {
+                synchronized (idleConnections) {
+                    // Most recently used first, so the evictor trims the cold end
+                    idleConnections.addFirst(new IdleConnection(connection, System.nanoTime()));
+                }
+            } else {
+                connection.close();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        List<MpdConnection> evicted = new ArrayList<>();
+        synchronized (idleConnections) {
+            while (!idleConnections.isEmpty() && idleConnections.peekLast().returnedAt() < cutoff) {
+                evicted.add(idleConnections.pollLast().connection());
+            }
+        }
+        if (!evicted.isEmpty()) {
+            log.debug("Closing {} idle MPD connection(s)", evicted.size());
+            evicted.forEach(MpdConnection::close);
+        }
+    }
+
+    /**
+     * A leased connection, returned to the pool on {@link #close()}.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final MpdConnection connection;
+
+        private final int leasedGeneration;
+
+        private boolean released;
+
+        private Lease(MpdConnection connection, int leasedGeneration) {
+            this.connection = connection;
+            this.leasedGeneration = leasedGeneration;
+        }
+
+        public MpdConnection connection() {
+            return connection;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(connection, leasedGeneration);
+            }
+        }
+
+    }
+
+    /**
+     * Point-in-time pool utilization.
+     *
+     * @param active       connections currently leased
+     * @param idle         open connections waiting in the pool
+     * @param maxSize      upper bound of open connections
+     * @param waiting      threads waiting for a lease
+     * @param waitTimeouts leases that gave up after {@code maxWait}
+     */
+    public record Stats(int active, int idle, int maxSize, int waiting, long waitTimeouts) {
+    }
+
+    private record IdleConnection(MpdConnection connection, long returnedAt) {
+    }
+
+}
@@ -0,0 +1,73 @@
+package uk.humbkr.jmpc.mpd;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An MPD filter expression such as {@code ((artist contains 'x') AND (album == 'y'))}, for
+ * {@code search}, {@code searchcount}, {@code searchadd} and {@code findadd}.
+ * <p>
+ * Values are escaped for the expression; {@link #argument()} quotes the whole expression again as
+ * a command argument. {@code contains} and {@code searchcount} need MPD 0.24; {@code search} and
+ * {@code searchcount} ignore case, {@code find} and {@code count} do not.
+ */
+public record MpdFilter(String expression) {
+
+    /**
+     * Matches every song: MPD has no empty filter, so this selects everything modified since the epoch.
+     */
+    public static final MpdFilter ALL = new MpdFilter("(modified-since '0')");
+
+    /**
+     * Songs whose tag contains the value; {@code any} matches any tag.
+     */
+    public static MpdFilter contains(String tag, String value) {
+        return new MpdFilter("(" + tag + " contains " + quoteValue(value) + ")");
+    }
+
+    public static MpdFilter equalTo(String tag, String value) {
+        return new MpdFilter("(" + tag + " == " + quoteValue(value) + ")");
+    }
+
+    /**
+     * Songs in the directory or below it.
+     */
+    public static MpdFilter base(String directory) {
+        return new MpdFilter("(base " + quoteValue(directory) + ")");
+    }
+
+    /**
+     * Songs matching every filter.
+     */
+    public static MpdFilter and(List<MpdFilter> filters) {
+        if (filters.isEmpty()) {
+            return ALL;
+        }
+        if (filters.size() == 1) {
+            return filters.getFirst();
+        }
+        return new MpdFilter(filters.stream()
+                .map(MpdFilter::expression)
+                .collect(Collectors.joining(" AND ", "(", ")")));
+    }
+
+    /**
+     * The expression quoted as a command argument, e.g. {@code "search " + filter.argument()}.
+     */
+    public String argument() {
+        return MpdConnection.quote(expression);
+    }
+
+    private static String quoteValue(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'' || c == '\\') {
+                quoted.append('\\');
+            }
+            quoted.append(c);
+        }
+        return quoted.append('\'').toString();
+    }
+
+}
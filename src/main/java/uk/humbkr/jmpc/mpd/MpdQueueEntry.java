@@ -0,0 +1,13 @@
+package uk.humbkr.jmpc.mpd;
+
+import org.bff.javampd.song.MPDSong;
+
+/**
+ * A song in the MPD queue.
+ *
+ * @param position zero-based position in the queue
+ * @param id       MPD's song id, stable while the song stays in the queue
+ * @param song     the song's tags
+ */
+public record MpdQueueEntry(int position, int id, MPDSong song) {
+}
@@ -0,0 +1,235 @@
+package uk.humbkr.jmpc.mpd;
+
+import org.bff.javampd.player.Player;
+import org.bff.javampd.song.MPDSong;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsers for MPD's {@code key: value} response lines.
+ */
+public final class MpdResponses {
+
+    private MpdResponses() {
+    }
+
+    /**
+     * Maps each key to its first value.
+     */
+    public static Map<String, String> toMap(List<String> lines) {
+        Map<String, String> values = new HashMap<>();
+        for (String line : lines) {
+            int separator = line.indexOf(": ");
+            if (separator > 0) {
+                values.putIfAbsent(line.substring(0, separator), line.substring(separator + 2));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Parses song blocks as returned by {@code listallinfo}, {@code playlistinfo}, {@code find} and friends.
+     * Directory and playlist entries are skipped.
+     */
+    public static List<MPDSong> parseSongs(List<String> lines) {
+        List<SongFields> blocks = parseSongFields(lines);
+        List<MPDSong> songs = new ArrayList<>(blocks.size());
+        blocks.forEach(fields -> songs.add(fields.build()));
+        return songs;
+    }
+
+    /**
+     * Parses queue songs with their {@code Pos} and {@code Id}, as returned by {@code playlistinfo} and {@code plchanges}.
+     */
+    public static List<MpdQueueEntry> parseQueue(List<String> lines) {
+        List<SongFields> blocks = parseSongFields(lines);
+        List<MpdQueueEntry> entries = new ArrayList<>(blocks.size());
+        blocks.forEach(fields -> entries.add(new MpdQueueEntry(fields.position, fields.id, fields.build())));
+        return entries;
+    }
+
+    /**
+     * Maps each changed queue position to its song id, as returned by {@code plchangesposid}.
+     */
+    public static Map<Integer, Integer> parsePositionIds(List<String> lines) {
+        Map<Integer, Integer> ids = new LinkedHashMap<>();
+        int position = -1;
+        for (String line : lines) {
+            if (line.startsWith("cpos: ")) {
+                position = parseInt(line.substring("cpos: ".length()), -1);
+            } else if (position >= 0 && line.startsWith("Id: ")) {
+                ids.put(position, parseInt(line.substring("Id: ".length()), -1));
+                position = -1;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Maps each {@code directory} entry to the {@code Last-Modified} stamp following it.
+     */
+    public static Map<String, String> parseDirectories(List<String> lines) {
+        Map<String, String> directories = new HashMap<>();
+        String directory = null;
+        for (String line : lines) {
+            if (line.startsWith("directory: ")) {
+                directory = line.substring("directory: ".length());
+                directories.put(directory, "");
+            } else if (directory != null && line.startsWith("Last-Modified: ")) {
+                directories.put(directory, line.substring("Last-Modified: ".length()));
+                directory = null;
+            } else if (line.startsWith("file: ") || line.startsWith("playlist: ")) {
+                directory = null;
+            }
+        }
+        return directories;
+    }
+
+    public static Player.Status parseState(String state) {
+        if ("play".equals(state)) {
+            return Player.Status.STATUS_PLAYING;
+        }
+        if ("pause".equals(state)) {
+            return Player.Status.STATUS_PAUSED;
+        }
+        return Player.Status.STATUS_STOPPED;
+    }
+
+    public static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses a fractional number of seconds, e.g. MPD's {@code elapsed} or {@code duration}, truncated to whole seconds.
+     */
+    public static long parseSeconds(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses a fractional number of seconds, e.g. MPD's {@code elapsed} or {@code duration}, into milliseconds.
+     */
+    public static long parseMillis(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.round(Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static List<SongFields> parseSongFields(List<String> lines) {
+        List<SongFields> blocks = new ArrayList<>();
+        SongFields current = null;
+        for (String line : lines) {
+            int separator = line.indexOf(": ");
+            if (separator <= 0) {
+                continue;
+            }
+            String key = line.substring(0, separator);
+            String value = line.substring(separator + 2);
+
+            switch (key) {
+                case "file" -> {
+                    current = new SongFields(value);
+                    blocks.add(current);
+                }
+                case "directory", "playlist" -> current = null;
+                default -> {
+                    if (current != null) {
+                        current.set(key, value);
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static final class SongFields {
+
+        private final String file;
+
+        private String title;
+
+        private String name;
+
+        private String artist;
+
+        private String album;
+
+        private String genre;
+
+        private String track;
+
+        private String disc;
+
+        private int length;
+
+        private int position = -1;
+
+        private int id = -1;
+
+        private SongFields(String file) {
+            this.file = file;
+        }
+
+        private void set(String key, String value) {
+            switch (key) {
+                case "Title" -> title = value;
+                case "Name" -> name = value;
+                case "Artist" -> artist = artist == null ? value : artist;
+                case "Album" -> album = value;
+                case "Genre" -> genre = genre == null ? value : genre;
+                case "Track" -> track = value;
+                case "Disc" -> disc = value;
+                case "Time" -> length = parseInt(value, length);
+                case "duration" -> length = (int) parseSeconds(value, length);
+                case "Pos" -> position = parseInt(value, position);
+                case "Id" -> id = parseInt(value, id);
+                default -> {
+                    // Tag not shown by jmpc
+                }
+            }
+        }
+
+        private MPDSong build() {
+            return MPDSong.builder()
+                    .file(file)
+                    .name(name != null ? name : fileName(file))
+                    .title(title)
+                    .artistName(artist)
+                    .albumName(album)
+                    .genre(genre)
+                    .track(track)
+                    .discNumber(disc)
+                    .length(length)
+                    .build();
+        }
+
+        private static String fileName(String file) {
+            return file.substring(file.lastIndexOf('/') + 1);
+        }
+
+    }
+
+}
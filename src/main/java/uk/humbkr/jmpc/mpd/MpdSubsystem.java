@@ -0,0 +1,35 @@
+package uk.humbkr.jmpc.mpd;
+
+import java.util.Optional;
+
+/**
+ * MPD subsystems reported by the {@code idle} command.
+ */
+public enum MpdSubsystem {
+
+    DATABASE("database"),
+    PLAYER("player"),
+    MIXER("mixer"),
+    PLAYLIST("playlist"),
+    OPTIONS("options");
+
+    private final String protocolName;
+
+    MpdSubsystem(String protocolName) {
+        this.protocolName = protocolName;
+    }
+
+    public String getProtocolName() {
+        return protocolName;
+    }
+
+    public static Optional<MpdSubsystem> fromProtocolName(String name) {
+        for (MpdSubsystem subsystem : values()) {
+            if (subsystem.protocolName.equals(name)) {
+                return Optional.of(subsystem);
+            }
+        }
+        return Optional.empty();
+    }
+
+}
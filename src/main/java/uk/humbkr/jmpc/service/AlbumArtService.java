@@ -0,0 +1,190 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.albumart.AlbumArtCache;
+import uk.humbkr.jmpc.albumart.ThumbnailSize;
+import uk.humbkr.jmpc.albumart.Thumbnails;
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Album covers, fetched from MPD in the background and served as thumbnails.
+ * <p>
+ * Covers are looked up per directory, as MPD's {@code albumart} does, and only one fetch per
+ * directory runs at a time, with a bounded number of fetches overall so covers never crowd out
+ * playback commands on the pool. Each cover is identified by the SHA-256 of its bytes: albums
+ * sharing a cover are resized and stored once, and a known hash is served from the
+ * {@link AlbumArtCache} without asking MPD again. The directory lookup is dropped whenever MPD's
+ * database changes; the thumbnails themselves never go stale.
+ */
+@Slf4j
+@Service
+public class AlbumArtService {
+
+    private static final int MAX_KNOWN_DIRECTORIES = 20_000;
+
+    private final MpdService mpdService;
+
+    private final MpdIdleListener idleListener;
+
+    private final ExecutorService fetcher = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("album-art-", 0).factory());
+
+    // Cover hash by directory, empty for albums without a cover; least recently used first
+    private final Map<String, Optional<String>> coversByDirectory = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Optional<String>> eldest) {
+                    return size() > MAX_KNOWN_DIRECTORIES;
+                }
+            });
+
+    private final Map<String, CompletableFuture<Optional<String>>> pendingFetches = new ConcurrentHashMap<>();
+
+    private final LongAdder fetches = new LongAdder();
+
+    private Semaphore fetchPermits;
+
+    private AlbumArtCache cache;
+
+    private Registration changeRegistration;
+
+    @Value("${mpd.albumart.cache-dir:}")
+    private String cacheDir;
+
+    @Value("${mpd.albumart.memory-max-bytes:33554432}")
+    private long memoryMaxBytes;
+
+    @Value("${mpd.albumart.disk-max-bytes:268435456}")
+    private long diskMaxBytes;
+
+    @Value("${mpd.albumart.max-concurrent-fetches:2}")
+    private int maxConcurrentFetches;
+
+    public AlbumArtService(MpdService mpdService, MpdIdleListener idleListener) {
+        this.mpdService = mpdService;
+        this.idleListener = idleListener;
+    }
+
+    @PostConstruct
+    public void start() {
+        Path directory = cacheDir == null || cacheDir.isBlank() ? null : Path.of(cacheDir);
+        cache = new AlbumArtCache(directory, memoryMaxBytes, diskMaxBytes);
+        fetchPermits = new Semaphore(maxConcurrentFetches);
+
+        changeRegistration = idleListener.addChangeListener(event -> {
+            if (event.affects(MpdSubsystem.DATABASE)) {
+                coversByDirectory.clear();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+        }
+        fetcher.shutdownNow();
+    }
+
+    /**
+     * The hash of the cover of a song's album, fetching and caching it first if needed.
+     *
+     * @return a future of the hash, or of empty if the album has no usable cover
+     */
+    public CompletableFuture<Optional<String>> getCover(String file) {
+        String directory = directoryOf(file);
+        Optional<String> known = coversByDirectory.get(directory);
+        if (known != null && (known.isEmpty() || cache.contains(known.get()))) {
+            return CompletableFuture.completedFuture(known);
+        }
+
+        CompletableFuture<Optional<String>> fetch = new CompletableFuture<>();
+        CompletableFuture<Optional<String>> pending = pendingFetches.putIfAbsent(directory, fetch);
+        if (pending != null) {
+            return pending;
+        }
+
+        fetcher.execute(() -> {
+            try {
+                Optional<String> hash = fetch(file);
+                coversByDirectory.put(directory, hash);
+                fetch.complete(hash);
+            } catch (RuntimeException e) {
+                // Not remembered, the next request tries again
+                fetch.completeExceptionally(e);
+            } finally {
+                pendingFetches.remove(directory);
+            }
+        });
+        return fetch;
+    }
+
+    public Optional<byte[]> getThumbnail(String hash, ThumbnailSize size) {
+        return cache.get(hash, size);
+    }
+
+    public AlbumArtCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Covers downloaded from MPD since startup.
+     */
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    private Optional<String> fetch(String file) {
+        try {
+            fetchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        try {
+            Optional<byte[]> art = mpdService.readAlbumArt(file);
+            fetches.increment();
+            if (art.isEmpty()) {
+                return Optional.empty();
+            }
+
+            String hash = Thumbnails.hash(art.get());
+            if (!cache.contains(hash)) {
+                cache.put(hash, Thumbnails.render(art.get()));
+                log.debug("Cached cover {} for {}", hash, directoryOf(file));
+            }
+            return Optional.of(hash);
+        } catch (IOException e) {
+            log.debug("Ignoring undecodable cover for {}: {}", file, e.getMessage());
+            return Optional.empty();
+        } finally {
+            fetchPermits.release();
+        }
+    }
+
+    private static String directoryOf(String file) {
+        int separator = file.lastIndexOf('/');
+        return separator >= 0 ? file.substring(0, separator) : "";
+    }
+
+}
@@ -0,0 +1,64 @@
+package uk.humbkr.jmpc.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Latest-value-wins sender for a continuous control such as the volume slider.
+ * <p>
+ * At most one command is in flight. Values submitted meanwhile overwrite each other and only the
+ * last one is sent once the current command completes, so the final value is always applied.
+ */
+@Slf4j
+class CoalescedCommand {
+
+    private final String name;
+
+    private final Consumer<String> sender;
+
+    private final AtomicReference<String> pending = new AtomicReference<>();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    CoalescedCommand(String name, Consumer<String> sender) {
+        this.name = name;
+        this.sender = sender;
+    }
+
+    /**
+     * Queues the command, replacing any value not sent yet; never blocks.
+     */
+    void submit(String command) {
+        pending.set(command);
+        drain();
+    }
+
+    private void drain() {
+        if (running.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("mpd-" + name).start(this::run);
+        }
+    }
+
+    private void run() {
+        try {
+            String command;
+            while ((command = pending.getAndSet(null)) != null) {
+                try {
+                    sender.accept(command);
+                } catch (Exception e) {
+                    log.warn("Failed to send coalesced MPD command '{}'", command, e);
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+        // A value submitted between the last poll and the reset above would otherwise be stranded
+        if (pending.get() != null) {
+            drain();
+        }
+    }
+
+}
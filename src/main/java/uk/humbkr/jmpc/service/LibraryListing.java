@@ -0,0 +1,15 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Songs and directories returned by {@code lsinfo} or {@code listallinfo}.
+ *
+ * @param songs       songs in the listing
+ * @param directories directory paths mapped to their {@code Last-Modified} stamp
+ */
+public record LibraryListing(List<MPDSong> songs, Map<String, String> directories) {
+}
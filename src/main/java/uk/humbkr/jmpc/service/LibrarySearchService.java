@@ -0,0 +1,199 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.song.MPDSong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Library search run by MPD, for deployments that do not keep a local snapshot.
+ * <p>
+ * Queries are compiled to {@link MpdFilter} expressions and read in fixed pages of
+ * {@value #PAGE_SIZE} songs with {@code search … window}, each with its match count. Pages are kept
+ * in an LRU cache keyed by filter, page and database version, so scrolling back, repeating a search
+ * and every other tab typing the same query are served without a round trip. The version advances
+ * whenever the idle listener reports a {@code database} change; a search still in flight across the
+ * change stores its page under the old version, where it is never read again.
+ */
+@Service
+public class LibrarySearchService {
+
+    public static final int PAGE_SIZE = 100;
+
+    // Tags a query term can be restricted to, as in "artist:beatles"
+    private static final Set<String> FIELDS = Set.of("artist", "album", "title", "genre");
+
+    private final MpdService mpdService;
+
+    private final MpdIdleListener idleListener;
+
+    // Least recently used first
+    private final Map<PageKey, SearchPage> pages = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PageKey, SearchPage> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+
+    private final AtomicLong databaseVersion = new AtomicLong();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private Registration changeRegistration;
+
+    @Value("${mpd.search.cache-size:512}")
+    private int cacheSize;
+
+    public LibrarySearchService(MpdService mpdService, MpdIdleListener idleListener) {
+        this.mpdService = mpdService;
+        this.idleListener = idleListener;
+    }
+
+    @PostConstruct
+    public void start() {
+        changeRegistration = idleListener.addChangeListener(event -> {
+            if (event.affects(MpdSubsystem.DATABASE)) {
+                databaseVersion.incrementAndGet();
+                pages.clear();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+        }
+    }
+
+    /**
+     * Compiles a search box query: every whitespace-separated term must match, as a substring of any
+     * tag ({@code any contains}) or of one tag when prefixed with {@code artist:}, {@code album:},
+     * {@code title:} or {@code genre:}. A blank query matches every song.
+     */
+    public static MpdFilter compile(String query) {
+        if (query == null || query.isBlank()) {
+            return MpdFilter.ALL;
+        }
+
+        List<MpdFilter> terms = new ArrayList<>();
+        for (String term : query.strip().split("\\s+")) {
+            int colon = term.indexOf(':');
+            String field = colon > 0 ? term.substring(0, colon).toLowerCase(Locale.ROOT) : null;
+            if (field != null && FIELDS.contains(field) && colon < term.length() - 1) {
+                terms.add(MpdFilter.contains(field, term.substring(colon + 1)));
+            } else {
+                terms.add(MpdFilter.contains("any", term));
+            }
+        }
+        return MpdFilter.and(terms);
+    }
+
+    /**
+     * The number of songs matching the filter, read with its first page.
+     */
+    public int count(MpdFilter filter) throws MPDException {
+        return page(filter, 0).total();
+    }
+
+    /**
+     * Songs {@code offset} to {@code offset + limit} of the matches, assembled from cached pages and
+     * read from MPD where missing. Shorter than {@code limit} past the last match.
+     */
+    public SearchPage fetch(MpdFilter filter, int offset, int limit) throws MPDException {
+        List<SearchPage> window = new ArrayList<>();
+        for (int pageIndex = offset / PAGE_SIZE; pageIndex * PAGE_SIZE < offset + limit; pageIndex++) {
+            SearchPage page = page(filter, pageIndex);
+            window.add(page);
+            if (isLast(page)) {
+                break;
+            }
+        }
+        return slice(window, offset, limit);
+    }
+
+    /**
+     * Like {@link #fetch}, but only if every page of the range is cached, so it never waits for MPD.
+     */
+    public Optional<SearchPage> cached(MpdFilter filter, int offset, int limit) {
+        List<SearchPage> window = new ArrayList<>();
+        for (int pageIndex = offset / PAGE_SIZE; pageIndex * PAGE_SIZE < offset + limit; pageIndex++) {
+            SearchPage page = pages.get(key(filter, pageIndex));
+            if (page == null) {
+                return Optional.empty();
+            }
+            window.add(page);
+            if (isLast(page)) {
+                break;
+            }
+        }
+        return Optional.of(slice(window, offset, limit));
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    private SearchPage page(MpdFilter filter, int pageIndex) throws MPDException {
+        PageKey key = key(filter, pageIndex);
+        SearchPage page = pages.get(key);
+        if (page != null) {
+            cacheHits.increment();
+            return page;
+        }
+
+        cacheMisses.increment();
+        page = mpdService.search(filter, pageIndex * PAGE_SIZE, PAGE_SIZE);
+        pages.put(key, page);
+        return page;
+    }
+
+    private PageKey key(MpdFilter filter, int pageIndex) {
+        return new PageKey(filter.expression(), pageIndex, databaseVersion.get());
+    }
+
+    private static boolean isLast(SearchPage page) {
+        return page.offset() + page.songs().size() >= page.total();
+    }
+
+    private static SearchPage slice(List<SearchPage> window, int offset, int limit) {
+        List<MPDSong> songs = new ArrayList<>(limit);
+        int end = offset + limit;
+        for (SearchPage page : window) {
+            int from = Math.max(offset - page.offset(), 0);
+            int to = Math.min(end - page.offset(), page.songs().size());
+            if (from < to) {
+                songs.addAll(page.songs().subList(from, to));
+            }
+        }
+        int total = window.isEmpty() ? 0 : window.getLast().total();
+        return new SearchPage(offset, songs, total);
+    }
+
+    private record PageKey(String expression, int page, long databaseVersion) {
+    }
+
+}
@@ -0,0 +1,228 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.MPDException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.library.LibraryDiff;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.library.LibrarySnapshotFile;
+import uk.humbkr.jmpc.library.LibraryUpdate;
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Holds one immutable library snapshot for the whole application, keyed on MPD's {@code db_update}.
+ * <p>
+ * The snapshot is reloaded in the background when the idle listener reports a {@code database}
+ * change and swapped in atomically, so readers never wait for a reload and opening a tab never
+ * triggers another {@code listallinfo}. When {@code mpd.library.snapshot-dir} is set, the snapshot
+ * is also persisted there and served from disk after a restart until MPD confirms or replaces it.
+ * Database changes are applied incrementally by the {@link LibrarySynchronizer} and published with
+ * their {@link LibraryDiff}, so grids can update in place.
+ * <p>
+ * With {@code mpd.library.mode=remote} no snapshot is loaded at all: the snapshot stays empty and
+ * the library is browsed and searched through the {@link LibrarySearchService} instead.
+ */
+@Slf4j
+@Service
+public class LibraryService {
+
+    private static final String SNAPSHOT_FILE_NAME = "library.snapshot";
+
+    private static final String REMOTE_MODE = "remote";
+
+    private final MpdService mpdService;
+
+    private final MpdIdleListener idleListener;
+
+    private final LibrarySynchronizer synchronizer;
+
+    private final UiBroadcaster<LibraryUpdate> broadcaster = new UiBroadcaster<>();
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    // Refresh checks answered by the current snapshot, and those that had to load from MPD
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private volatile LibrarySnapshot snapshot = LibrarySnapshot.EMPTY;
+
+    private Registration changeRegistration;
+
+    @Value("${mpd.library.snapshot-dir:}")
+    private String snapshotDir;
+
+    @Value("${mpd.library.mode:snapshot}")
+    private String mode;
+
+    public LibraryService(MpdService mpdService, MpdIdleListener idleListener, LibrarySynchronizer synchronizer) {
+        this.mpdService = mpdService;
+        this.idleListener = idleListener;
+        this.synchronizer = synchronizer;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (isRemote()) {
+            log.info("Library mode is remote, searches run on MPD");
+            return;
+        }
+
+        // Serve the last persisted snapshot as soon as it is indexed, off the startup thread; being
+        // queued first on the refresher, the first refresh revalidates it against MPD
+        snapshotFile().ifPresent(file -> refresher.execute(() -> loadPersisted(file)));
+
+        // The listener also reports every subsystem after (re)connecting, which covers the initial load
+        changeRegistration = idleListener.addChangeListener(event -> {
+            if (event.affects(MpdSubsystem.DATABASE)) {
+                refreshAsync();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+        }
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Whether the library is only searched on MPD, without a local snapshot.
+     */
+    public boolean isRemote() {
+        return REMOTE_MODE.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * The current snapshot; never blocks.
+     */
+    public LibrarySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Library updates pushed to UIs since startup.
+     */
+    public long getPushCount() {
+        return broadcaster.getDeliveryCount();
+    }
+
+    /**
+     * Delivers the current snapshot, and every later update with its diff, to the consumer through
+     * {@link UI#access}.
+     */
+    public Registration subscribe(UI ui, Consumer<LibraryUpdate> consumer) {
+        return broadcaster.subscribe(ui, consumer, () -> new LibraryUpdate(snapshot, LibraryDiff.FULL));
+    }
+
+    /**
+     * Schedules a reload check. Requests arriving while one is already queued are coalesced.
+     */
+    public void refreshAsync() {
+        if (isRemote()) {
+            return;
+        }
+        if (refreshPending.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                refreshPending.set(false);
+                refresh();
+            });
+        }
+    }
+
+    private void refresh() {
+        try {
+            long version = mpdService.getDatabaseVersion();
+            if (version == snapshot.version()) {
+                cacheHits.increment();
+                log.debug("Library snapshot for database version {} is current", version);
+                return;
+            }
+            cacheMisses.increment();
+
+            long start = System.nanoTime();
+            LibraryUpdate update = load(snapshot, version);
+            LibrarySnapshot loaded = update.snapshot();
+            snapshot = loaded;
+            log.info("Loaded library snapshot of {} songs for database version {} in {} ms",
+                    loaded.size(), version, (System.nanoTime() - start) / 1_000_000);
+
+            broadcaster.broadcast(update);
+            persist(loaded);
+        } catch (Exception e) {
+            log.warn("Failed to refresh library snapshot", e);
+        }
+    }
+
+    private void loadPersisted(Path file) {
+        LibrarySnapshotFile.read(file).ifPresent(persisted -> {
+            snapshot = persisted;
+            log.info("Loaded persisted library snapshot of {} songs for database version {}",
+                    persisted.size(), persisted.version());
+            broadcaster.broadcast(new LibraryUpdate(persisted, LibraryDiff.FULL));
+        });
+    }
+
+    private LibraryUpdate load(LibrarySnapshot current, long version) {
+        // Snapshots without directory stamps cannot be synchronized incrementally
+        if (current.version() < 0 || current.directories().isEmpty()) {
+            return synchronizer.load(version);
+        }
+
+        try {
+            return synchronizer.synchronize(current, version);
+        } catch (MPDException e) {
+            log.warn("Incremental library sync failed, reloading the whole library", e);
+            return synchronizer.load(version);
+        }
+    }
+
+    private void persist(LibrarySnapshot loaded) {
+        snapshotFile().ifPresent(file -> {
+            try {
+                LibrarySnapshotFile.write(file, loaded);
+                log.debug("Persisted library snapshot to {}", file);
+            } catch (IOException e) {
+                log.warn("Failed to persist library snapshot to {}", file, e);
+            }
+        });
+    }
+
+    private Optional<Path> snapshotFile() {
+        if (snapshotDir == null || snapshotDir.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(Path.of(snapshotDir, SNAPSHOT_FILE_NAME));
+    }
+
+}
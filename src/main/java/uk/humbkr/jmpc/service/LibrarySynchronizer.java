@@ -0,0 +1,185 @@
+package uk.humbkr.jmpc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.song.MPDSong;
+import org.springframework.stereotype.Component;
+import uk.humbkr.jmpc.library.LibraryDiff;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.library.LibraryUpdate;
+import uk.humbkr.jmpc.library.SongStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a library snapshot up to date by fetching only the directories MPD reports as modified.
+ * <p>
+ * The tree is walked level by level with one {@code lsinfo} command list per level. A directory
+ * whose {@code Last-Modified} stamp differs from the snapshot, or that is new, is re-fetched as a
+ * whole with {@code listallinfo}. Unchanged directories are only descended into if they have
+ * subdirectories, since adding or removing files changes the stamp of their direct parent only.
+ * Songs directly inside a listed directory are taken from the listing as they come for free, and
+ * compared with the snapshot by their tags.
+ * <p>
+ * Retagging files in place does not touch the stamp of their directory, so such edits in directories
+ * that are not listed go unnoticed. When MPD's database version advanced but the walk found no
+ * changed directory and no changed song, this is what must have happened and the whole library is
+ * loaded instead, rather than marking a stale snapshot as current.
+ */
+@Slf4j
+@Component
+public class LibrarySynchronizer {
+
+    private final MpdService mpdService;
+
+    public LibrarySynchronizer(MpdService mpdService) {
+        this.mpdService = mpdService;
+    }
+
+    /**
+     * Loads the whole library; the resulting diff is {@link LibraryDiff#FULL}.
+     */
+    public LibraryUpdate load(long version) throws MPDException {
+        LibraryListing listing = mpdService.getLibraryListing("");
+        return new LibraryUpdate(LibrarySnapshot.of(version, listing.songs(), listing.directories()), LibraryDiff.FULL);
+    }
+
+    public LibraryUpdate synchronize(LibrarySnapshot current, long version) throws MPDException {
+        Map<String, String> known = current.directories();
+        Map<String, List<String>> knownChildren = childrenByParent(known.keySet());
+
+        Map<String, String> directories = new HashMap<>(known);
+        Set<String> replacedDirectories = new HashSet<>();
+        Set<String> replacedSubtrees = new HashSet<>();
+        List<MPDSong> fetched = new ArrayList<>();
+        int commands = 0;
+        int changedDirectories = 0;
+
+        List<String> level = List.of("");
+        while (!level.isEmpty()) {
+            List<LibraryListing> listings = mpdService.listDirectories(level);
+            commands += level.size();
+
+            List<String> nextLevel = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                String directory = level.get(i);
+                LibraryListing listing = listings.get(i);
+
+                replacedDirectories.add(directory);
+                fetched.addAll(listing.songs());
+
+                for (String child : knownChildren.getOrDefault(directory, List.of())) {
+                    if (!listing.directories().containsKey(child)) {
+                        changedDirectories++;
+                        replacedSubtrees.add(child);
+                        removeSubtree(directories, child);
+                    }
+                }
+
+                for (Map.Entry<String, String> child : listing.directories().entrySet()) {
+                    String path = child.getKey();
+                    if (!child.getValue().equals(known.get(path))) {
+                        LibraryListing subtree = mpdService.getLibraryListing(path);
+                        commands++;
+                        changedDirectories++;
+
+                        replacedSubtrees.add(path);
+                        removeSubtree(directories, path);
+                        directories.put(path, child.getValue());
+                        directories.putAll(subtree.directories());
+                        fetched.addAll(subtree.songs());
+                    } else if (knownChildren.containsKey(path)) {
+                        nextLevel.add(path);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+
+        LibraryUpdate update = merge(current, version, directories, fetched, replacedDirectories, replacedSubtrees);
+        if (changedDirectories == 0 && update.diff().isEmpty()) {
+            log.debug("Database version changed without a changed directory, reloading the whole library");
+            return load(version);
+        }
+        log.debug("Synchronized library with {} commands: {} added, {} removed, {} changed", commands,
+                update.diff().added().size(), update.diff().removed().size(), update.diff().changed().size());
+        return update;
+    }
+
+    private LibraryUpdate merge(LibrarySnapshot current, long version, Map<String, String> directories,
+                                List<MPDSong> fetched, Set<String> replacedDirectories, Set<String> replacedSubtrees) {
+        SongStore store = current.store();
+        Map<String, Integer> previous = new HashMap<>();
+        SongStore.Builder songs = SongStore.builder(store.size() + fetched.size());
+        List<MPDSong> removed = new ArrayList<>();
+
+        Set<String> fetchedFiles = new HashSet<>();
+        fetched.forEach(song -> fetchedFiles.add(song.getFile()));
+
+        // Unchanged songs are copied column by column, only replaced ones are materialized
+        for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+            String file = store.file(ordinal);
+            if (isReplaced(file, replacedDirectories, replacedSubtrees)) {
+                previous.put(file, ordinal);
+                if (!fetchedFiles.contains(file)) {
+                    removed.add(store.song(ordinal));
+                }
+            } else {
+                songs.add(store, ordinal);
+            }
+        }
+
+        List<MPDSong> added = new ArrayList<>();
+        List<MPDSong> changed = new ArrayList<>();
+        for (MPDSong song : fetched) {
+            Integer old = previous.get(song.getFile());
+            if (old == null) {
+                added.add(song);
+            } else if (!store.hasSameTags(old, song)) {
+                changed.add(song);
+            }
+            songs.add(song);
+        }
+
+        LibrarySnapshot snapshot = LibrarySnapshot.of(version, songs.build(), directories);
+        return new LibraryUpdate(snapshot, LibraryDiff.of(added, removed, changed));
+    }
+
+    private static boolean isReplaced(String file, Set<String> replacedDirectories, Set<String> replacedSubtrees) {
+        String directory = parentOf(file);
+        if (replacedDirectories.contains(directory)) {
+            return true;
+        }
+        while (!directory.isEmpty()) {
+            if (replacedSubtrees.contains(directory)) {
+                return true;
+            }
+            directory = parentOf(directory);
+        }
+        return false;
+    }
+
+    private static void removeSubtree(Map<String, String> directories, String root) {
+        String prefix = root + "/";
+        directories.keySet().removeIf(path -> path.equals(root) || path.startsWith(prefix));
+    }
+
+    private static Map<String, List<String>> childrenByParent(Set<String> directories) {
+        Map<String, List<String>> children = new HashMap<>();
+        for (String directory : directories) {
+            children.computeIfAbsent(parentOf(directory), key -> new ArrayList<>()).add(directory);
+        }
+        return children;
+    }
+
+    private static String parentOf(String path) {
+        int separator = path.lastIndexOf('/');
+        return separator >= 0 ? path.substring(0, separator) : "";
+    }
+
+}
@@ -0,0 +1,216 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.player.Player;
+import org.bff.javampd.song.MPDSong;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.mpd.MpdCommandList;
+import uk.humbkr.jmpc.mpd.MpdCommandResult;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link MpdService}. Every operation runs on a virtual thread of the
+ * {@link UiTaskScheduler}, so a slow MPD or a reconnect never holds up a Vaadin request thread;
+ * apply results with {@code UI.access}.
+ */
+@Service
+public class MpdAsyncService {
+
+    private final MpdService mpdService;
+
+    private final LibrarySearchService searchService;
+
+    private final UiTaskScheduler scheduler;
+
+    public MpdAsyncService(MpdService mpdService, LibrarySearchService searchService, UiTaskScheduler scheduler) {
+        this.mpdService = mpdService;
+        this.searchService = searchService;
+        this.scheduler = scheduler;
+    }
+
+    public CompletableFuture<Void> connect() {
+        return run(mpdService::connect);
+    }
+
+    // Player controls
+    public CompletableFuture<Void> play() {
+        return run(mpdService::play);
+    }
+
+    public CompletableFuture<Void> pause() {
+        return run(mpdService::pause);
+    }
+
+    public CompletableFuture<Void> stop() {
+        return run(mpdService::stop);
+    }
+
+    public CompletableFuture<Void> next() {
+        return run(mpdService::next);
+    }
+
+    public CompletableFuture<Void> previous() {
+        return run(mpdService::previous);
+    }
+
+    public CompletableFuture<Integer> getVolume() {
+        return supply(mpdService::getVolume);
+    }
+
+    public CompletableFuture<Void> setVolume(int volume) {
+        return run(() -> mpdService.setVolume(volume));
+    }
+
+    /**
+     * Already non-blocking; see {@link MpdService#requestVolume(int)}.
+     */
+    public void requestVolume(int volume) {
+        mpdService.requestVolume(volume);
+    }
+
+    /**
+     * Already non-blocking; see {@link MpdService#requestSeek(long)}.
+     */
+    public void requestSeek(long positionMillis) {
+        mpdService.requestSeek(positionMillis);
+    }
+
+    // Status information
+    public CompletableFuture<Player.Status> getPlayerStatus() {
+        return supply(mpdService::getPlayerStatus);
+    }
+
+    public CompletableFuture<Optional<MPDSong>> getCurrentSong() {
+        return supply(mpdService::getCurrentSong);
+    }
+
+    public CompletableFuture<Long> getElapsedTime() {
+        return supply(mpdService::getElapsedTime);
+    }
+
+    public CompletableFuture<Long> getTotalTime() {
+        return supply(mpdService::getTotalTime);
+    }
+
+    public CompletableFuture<PlayerSnapshot> getPlayerSnapshot() {
+        return supply(mpdService::getPlayerSnapshot);
+    }
+
+    // Playlist operations
+    public CompletableFuture<Collection<MPDSong>> getPlaylist() {
+        return supply(mpdService::getPlaylist);
+    }
+
+    public CompletableFuture<QueueSnapshot> getQueueSnapshot() {
+        return supply(mpdService::getQueueSnapshot);
+    }
+
+    public CompletableFuture<QueueChanges> getQueueChanges(int version) {
+        return supply(() -> mpdService.getQueueChanges(version));
+    }
+
+    public CompletableFuture<List<MpdQueueEntry>> getQueueEntries(Collection<Integer> positions) {
+        return supply(() -> mpdService.getQueueEntries(positions));
+    }
+
+    public CompletableFuture<Void> addToPlaylist(MPDSong song) {
+        return run(() -> mpdService.addToPlaylist(song));
+    }
+
+    public CompletableFuture<List<MpdCommandResult>> addAllToPlaylist(Collection<MPDSong> songs) {
+        return supply(() -> mpdService.addAllToPlaylist(songs));
+    }
+
+    public CompletableFuture<List<MpdCommandResult>> executeBatch(MpdCommandList batch) {
+        return supply(() -> mpdService.executeBatch(batch));
+    }
+
+    public CompletableFuture<Void> playId(int songId) {
+        return run(() -> mpdService.playId(songId));
+    }
+
+    public CompletableFuture<Void> removeFromPlaylist(int songId) {
+        return run(() -> mpdService.removeFromPlaylist(songId));
+    }
+
+    public CompletableFuture<List<MpdCommandResult>> removeAllFromPlaylist(Collection<MpdQueueEntry> entries) {
+        return supply(() -> mpdService.removeAllFromPlaylist(entries));
+    }
+
+    public CompletableFuture<List<MpdCommandResult>> moveInPlaylist(Collection<MpdQueueEntry> entries, int to) {
+        return supply(() -> mpdService.moveInPlaylist(entries, to));
+    }
+
+    public CompletableFuture<Void> clearPlaylist() {
+        return run(mpdService::clearPlaylist);
+    }
+
+    // Music database
+    public CompletableFuture<Collection<MPDSong>> getAllSongs() {
+        return supply(mpdService::getAllSongs);
+    }
+
+    public CompletableFuture<LibraryListing> getLibraryListing(String path) {
+        return supply(() -> mpdService.getLibraryListing(path));
+    }
+
+    public CompletableFuture<List<LibraryListing>> listDirectories(List<String> paths) {
+        return supply(() -> mpdService.listDirectories(paths));
+    }
+
+    public CompletableFuture<Long> getDatabaseVersion() {
+        return supply(mpdService::getDatabaseVersion);
+    }
+
+    /**
+     * A range of the matches through the {@link LibrarySearchService} page cache.
+     */
+    public CompletableFuture<SearchPage> searchLibrary(MpdFilter filter, int offset, int limit) {
+        return supply(() -> searchService.fetch(filter, offset, limit));
+    }
+
+    public CompletableFuture<Void> addSearchResults(MpdFilter filter) {
+        return run(() -> mpdService.addSearchResults(filter));
+    }
+
+    public CompletableFuture<Void> addFindResults(MpdFilter filter) {
+        return run(() -> mpdService.addFindResults(filter));
+    }
+
+    public CompletableFuture<Collection<MPDSong>> searchByArtist(String artist) {
+        return supply(() -> mpdService.searchByArtist(artist));
+    }
+
+    public CompletableFuture<Collection<MPDSong>> searchByAlbum(String album) {
+        return supply(() -> mpdService.searchByAlbum(album));
+    }
+
+    public CompletableFuture<Collection<MPDSong>> searchByTitle(String title) {
+        return supply(() -> mpdService.searchByTitle(title));
+    }
+
+    private CompletableFuture<Void> run(MpdAction action) {
+        return supply(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> supply(Callable<T> call) {
+        return scheduler.submit(call);
+    }
+
+    @FunctionalInterface
+    private interface MpdAction {
+
+        void run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package uk.humbkr.jmpc.service;
+
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Set of MPD subsystems that changed, as reported by the idle listener.
+ */
+public record MpdChangeEvent(Set<MpdSubsystem> subsystems) {
+
+    public MpdChangeEvent {
+        subsystems = Set.copyOf(subsystems);
+    }
+
+    /**
+     * Event covering every subsystem, published after (re)connecting so listeners resynchronize.
+     */
+    public static MpdChangeEvent all() {
+        return new MpdChangeEvent(EnumSet.allOf(MpdSubsystem.class));
+    }
+
+    public boolean affects(MpdSubsystem subsystem) {
+        return subsystems.contains(subsystem);
+    }
+
+}
@@ -0,0 +1,129 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.shared.Registration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.mpd.MpdConnection;
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a dedicated MPD connection blocked on {@code idle} and publishes a {@link MpdChangeEvent}
+ * whenever the server reports a change, so nobody has to poll.
+ * <p>
+ * The listener thread is started as a {@link SmartLifecycle} once every bean is initialized, so
+ * listeners registered in {@code @PostConstruct} all receive the first event, which drives the
+ * initial load.
+ */
+@Slf4j
+@Service
+public class MpdIdleListener implements SmartLifecycle {
+
+    private static final Set<MpdSubsystem> SUBSYSTEMS = EnumSet.of(
+            MpdSubsystem.PLAYER,
+            MpdSubsystem.MIXER,
+            MpdSubsystem.PLAYLIST,
+            MpdSubsystem.OPTIONS,
+            MpdSubsystem.DATABASE);
+
+    private final MpdService mpdService;
+
+    private final List<Consumer<MpdChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${mpd.idle.reconnect-delay:5000}")
+    private long reconnectDelay;
+
+    private volatile boolean running;
+
+    private volatile MpdConnection connection;
+
+    private Thread listenerThread;
+
+    public MpdIdleListener(MpdService mpdService) {
+        this.mpdService = mpdService;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "mpd-idle");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        MpdConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Registration addChangeListener(Consumer<MpdChangeEvent> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    private void listen() {
+        while (running) {
+            try (MpdConnection idleConnection = mpdService.openDedicatedConnection()) {
+                connection = idleConnection;
+                log.info("Listening for MPD changes");
+
+                // Anything may have changed while we were disconnected
+                publish(MpdChangeEvent.all());
+
+                while (running) {
+                    Set<MpdSubsystem> changed = idleConnection.idle(SUBSYSTEMS);
+                    if (!changed.isEmpty()) {
+                        publish(new MpdChangeEvent(changed));
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("MPD idle connection lost, retrying in {} ms: {}", reconnectDelay, e.getMessage());
+                    sleepBeforeReconnect();
+                }
+            } finally {
+                connection = null;
+            }
+        }
+    }
+
+    private void publish(MpdChangeEvent event) {
+        log.debug("MPD changed: {}", event.subsystems());
+        for (Consumer<MpdChangeEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("MPD change listener failed", e);
+            }
+        }
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(reconnectDelay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+}
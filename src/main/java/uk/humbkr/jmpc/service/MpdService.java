@@ -1,44 +1,110 @@
 package uk.humbkr.jmpc.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.bff.javampd.MPDException;
 import org.bff.javampd.player.Player;
-import org.bff.javampd.playlist.MPDPlaylistSong;
-import org.bff.javampd.server.MPD;
 import org.bff.javampd.server.MPDConnectionException;
 import org.bff.javampd.song.MPDSong;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.mpd.MpdBinaryResponse;
+import uk.humbkr.jmpc.mpd.MpdCommandException;
+import uk.humbkr.jmpc.mpd.MpdCommandList;
+import uk.humbkr.jmpc.mpd.MpdCommandResult;
+import uk.humbkr.jmpc.mpd.MpdConnection;
+import uk.humbkr.jmpc.mpd.MpdConnectionObserver;
+import uk.humbkr.jmpc.mpd.MpdConnectionPool;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+import uk.humbkr.jmpc.mpd.MpdResponses;
 
-import java.net.InetAddress;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Slf4j
 @Service
 public class MpdService {
 
-    private MPD mpd;
+    private static final int ALBUM_ART_CHUNK_SIZE = 1024 * 1024;
+
+    // ACK codes for a missing file or picture, and for commands older servers do not know
+    private static final int ACK_ERROR_NO_EXIST = 50;
+
+    private static final int ACK_ERROR_UNKNOWN = 5;
+
+    private final MpdConnectionObserver observer;
+
+    private MpdConnectionPool pool;
+
+    private volatile boolean connected;
 
     @Value("${mpd.host:localhost}")
-    private String mpdHost;
+    private volatile String mpdHost;
 
     @Value("${mpd.port:6600}")
-    private int mpdPort;
+    private volatile int mpdPort;
+
+    @Value("${mpd.timeout:5000}")
+    private int mpdTimeout;
+
+    @Value("${mpd.pool.max-size:4}")
+    private int poolMaxSize;
+
+    @Value("${mpd.pool.max-wait:5000}")
+    private long poolMaxWait;
+
+    @Value("${mpd.pool.idle-timeout:30000}")
+    private long poolIdleTimeout;
+
+    @Value("${mpd.pool.validation-interval:10000}")
+    private long poolValidationInterval;
+
+    @Value("${mpd.batch.max-commands:1000}")
+    private int batchMaxCommands;
+
+    private final CoalescedCommand volumeCommand = new CoalescedCommand("setvol", this::execute);
+
+    private final CoalescedCommand seekCommand = new CoalescedCommand("seekcur", this::execute);
+
+    public MpdService(MpdConnectionObserver observer) {
+        this.observer = observer;
+    }
+
+    @PostConstruct
+    public void init() {
+        pool = new MpdConnectionPool(
+                this::openDedicatedConnection,
+                poolMaxSize,
+                Duration.ofMillis(poolMaxWait),
+                Duration.ofMillis(poolIdleTimeout),
+                Duration.ofMillis(poolValidationInterval));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.close();
+    }
 
     public void updateConnectionInfo(String host, int port) {
         this.mpdHost = host;
         this.mpdPort = port;
+        pool.clear();
     }
 
     public void connect() throws MPDConnectionException {
         try {
             log.info("Connecting to MPD server at {}:{}", mpdHost, mpdPort);
-            mpd = MPD.builder()
-                    .server(InetAddress.getByName(mpdHost).getHostAddress())
-                    .port(mpdPort)
-                    .build();
+            execute(connection -> connection.execute("ping"));
             log.info("Successfully connected to MPD server");
         } catch (Exception e) {
             log.error("Failed to connect to MPD server at {}:{}", mpdHost, mpdPort, e);
@@ -46,126 +112,446 @@ public class MpdService {
         }
     }
 
+    /**
+     * Opens a connection that is owned by the caller, e.g. for blocking {@code idle} commands.
+     */
+    public MpdConnection openDedicatedConnection() throws MPDConnectionException {
+        return MpdConnection.open(mpdHost, mpdPort, mpdTimeout, observer);
+    }
+
     public boolean isConnected() {
-        return mpd != null && mpd.isConnected();
+        return connected;
     }
 
     public void disconnect() {
-        if (mpd != null) {
-            log.info("Disconnecting from MPD server");
-            mpd.close();
-        }
+        log.info("Disconnecting from MPD server");
+        pool.clear();
+        connected = false;
+    }
+
+    public MpdConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
     }
 
     // Player controls
     public void play() throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().play();
+        execute("play");
     }
 
     public void pause() throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().pause();
+        execute("pause 1");
     }
 
     public void stop() throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().stop();
+        execute("stop");
     }
 
     public void next() throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().playNext();
+        execute("next");
     }
 
     public void previous() throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().playPrevious();
+        execute("previous");
     }
 
     public int getVolume() throws MPDException {
-        ensureConnected();
-        return mpd.getPlayer().getVolume();
+        return MpdResponses.parseInt(getStatus().get("volume"), 0);
     }
 
     // Volume control
     public void setVolume(int volume) throws MPDException {
-        ensureConnected();
-        mpd.getPlayer().setVolume(Math.max(0, Math.min(100, volume)));
+        execute(volumeCommand(volume));
+    }
+
+    /**
+     * Sets the volume without waiting, for continuous controls. Intermediate values are dropped
+     * while a {@code setvol} is in flight; the last requested volume is always applied.
+     */
+    public void requestVolume(int volume) {
+        volumeCommand.submit(volumeCommand(volume));
+    }
+
+    /**
+     * Seeks within the current song without waiting, coalesced like {@link #requestVolume(int)}.
+     */
+    public void requestSeek(long positionMillis) {
+        seekCommand.submit(String.format(Locale.ROOT, "seekcur %.3f", Math.max(0, positionMillis) / 1000.0));
+    }
+
+    private static String volumeCommand(int volume) {
+        return "setvol " + Math.max(0, Math.min(100, volume));
     }
 
     // Status information
     public Player.Status getPlayerStatus() throws MPDException {
-        ensureConnected();
-        return mpd.getPlayer().getStatus();
+        return MpdResponses.parseState(getStatus().get("state"));
     }
 
-    public Optional<MPDPlaylistSong> getCurrentSong() throws MPDException {
-        ensureConnected();
-        return mpd.getPlayer().getCurrentSong();
+    public Optional<MPDSong> getCurrentSong() throws MPDException {
+        return MpdResponses.parseSongs(execute("currentsong")).stream().findFirst();
     }
 
     public long getElapsedTime() throws MPDException {
-        ensureConnected();
-        return mpd.getPlayer().getElapsedTime();
+        return MpdResponses.parseSeconds(getStatus().get("elapsed"), 0);
     }
 
     public long getTotalTime() throws MPDException {
-        ensureConnected();
-        return mpd.getPlayer().getTotalTime();
+        return MpdResponses.parseSeconds(getStatus().get("duration"), 0);
+    }
+
+    /**
+     * Reads player and mixer state in a single round trip for the {@link MpdStatusHub}.
+     */
+    public PlayerSnapshot getPlayerSnapshot() throws MPDException {
+        return execute(connection -> {
+            List<MpdCommandResult> results = connection.executeList(List.of("status", "currentsong"));
+            Map<String, String> status = MpdResponses.toMap(linesOf(results.get(0)));
+            Optional<MPDSong> currentSong = MpdResponses.parseSongs(linesOf(results.get(1))).stream().findFirst();
+            return new PlayerSnapshot(
+                    MpdResponses.parseState(status.get("state")),
+                    currentSong.orElse(null),
+                    MpdResponses.parseMillis(status.get("elapsed"), 0),
+                    MpdResponses.parseMillis(status.get("duration"), 0),
+                    MpdResponses.parseInt(status.get("volume"), 0),
+                    System.nanoTime());
+        });
     }
 
     // Playlist operations
     public Collection<MPDSong> getPlaylist() throws MPDException {
-        ensureConnected();
-//        return mpd.getPlaylist().getSongList();
-        return List.of();
+        return MpdResponses.parseSongs(execute("playlistinfo"));
+    }
+
+    /**
+     * The whole queue with song ids, read in the same round trip as its version.
+     */
+    public QueueSnapshot getQueueSnapshot() throws MPDException {
+        return execute(connection -> {
+            List<MpdCommandResult> results = connection.executeList(List.of("status", "playlistinfo"));
+            Map<String, String> status = MpdResponses.toMap(linesOf(results.get(0)));
+            return new QueueSnapshot(
+                    MpdResponses.parseInt(status.get("playlist"), -1),
+                    List.copyOf(MpdResponses.parseQueue(linesOf(results.get(1)))));
+        });
+    }
+
+    /**
+     * Positions changed since {@code version} ({@code plchangesposid}), read in the same round trip as
+     * the current version and length. Only position and id are transferred, not the songs' tags.
+     */
+    public QueueChanges getQueueChanges(int version) throws MPDException {
+        return execute(connection -> {
+            List<MpdCommandResult> results = connection.executeList(List.of("status", "plchangesposid " + version));
+            Map<String, String> status = MpdResponses.toMap(linesOf(results.get(0)));
+            return new QueueChanges(
+                    MpdResponses.parseInt(status.get("playlist"), -1),
+                    MpdResponses.parseInt(status.get("playlistlength"), 0),
+                    MpdResponses.parsePositionIds(linesOf(results.get(1))));
+        });
+    }
+
+    /**
+     * Queue entries at the given positions, fetched as one {@code playlistinfo} range per run of
+     * consecutive positions.
+     */
+    public List<MpdQueueEntry> getQueueEntries(Collection<Integer> positions) throws MPDException {
+        int[] sorted = positions.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < sorted.length; ) {
+            int start = sorted[i];
+            int end = start + 1;
+            while (++i < sorted.length && sorted[i] == end) {
+                end++;
+            }
+            commands.add("playlistinfo " + start + ":" + end);
+        }
+
+        return execute(connection -> {
+            List<MpdQueueEntry> entries = new ArrayList<>(sorted.length);
+            for (int start = 0; start < commands.size(); start += batchMaxCommands) {
+                List<String> chunk = commands.subList(start, Math.min(commands.size(), start + batchMaxCommands));
+                for (MpdCommandResult result : connection.executeList(chunk)) {
+                    entries.addAll(MpdResponses.parseQueue(linesOf(result)));
+                }
+            }
+            return entries;
+        });
     }
 
     public void addToPlaylist(MPDSong song) throws MPDException {
-        ensureConnected();
-        mpd.getPlaylist().addSong(song);
+        execute("add " + MpdConnection.quote(song.getFile()));
+    }
+
+    /**
+     * Adds the songs to the queue using as few command lists as possible.
+     */
+    public List<MpdCommandResult> addAllToPlaylist(Collection<MPDSong> songs) throws MPDException {
+        MpdCommandList batch = new MpdCommandList();
+        songs.forEach(song -> batch.add(song.getFile()));
+        return executeBatch(batch);
+    }
+
+    /**
+     * Sends the queue edits as {@code command_list_ok_begin} blocks over one connection.
+     * Large batches are split to stay below MPD's command list size limit; after a failing command
+     * the rest of the batch is reported as skipped, like MPD does within one list.
+     *
+     * @return one result per command, in order
+     */
+    public List<MpdCommandResult> executeBatch(MpdCommandList batch) throws MPDException {
+        List<String> commands = batch.getCommands();
+        return execute(connection -> {
+            List<MpdCommandResult> results = new ArrayList<>(commands.size());
+            for (int start = 0; start < commands.size(); start += batchMaxCommands) {
+                List<String> chunk = commands.subList(start, Math.min(commands.size(), start + batchMaxCommands));
+                List<MpdCommandResult> chunkResults = connection.executeList(chunk);
+                results.addAll(chunkResults);
+                if (!chunkResults.get(chunkResults.size() - 1).isSuccess()) {
+                    commands.subList(results.size(), commands.size())
+                            .forEach(command -> results.add(MpdCommandResult.skipped(command)));
+                    break;
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Plays the queue entry with the given song id.
+     */
+    public void playId(int songId) throws MPDException {
+        execute("playid " + songId);
     }
 
-    public void removeFromPlaylist(MPDSong song) throws MPDException {
-        ensureConnected();
-//        mpd.getPlaylist().removeSong(song);
+    public void removeFromPlaylist(int songId) throws MPDException {
+        execute("deleteid " + songId);
+    }
+
+    /**
+     * Removes the entries, deleting each run of consecutive positions with a single {@code delete start:end}.
+     * Runs are deleted back to front so the positions of the remaining runs stay valid.
+     */
+    public List<MpdCommandResult> removeAllFromPlaylist(Collection<MpdQueueEntry> entries) throws MPDException {
+        List<MpdQueueEntry> sorted = entries.stream()
+                .sorted(Comparator.comparingInt(MpdQueueEntry::position).reversed())
+                .toList();
+
+        MpdCommandList batch = new MpdCommandList();
+        for (int i = 0; i < sorted.size(); ) {
+            MpdQueueEntry last = sorted.get(i);
+            int start = last.position();
+            while (++i < sorted.size() && sorted.get(i).position() == start - 1) {
+                start--;
+            }
+            if (start == last.position()) {
+                batch.deleteId(last.id());
+            } else {
+                batch.delete(start, last.position() + 1);
+            }
+        }
+        return executeBatch(batch);
+    }
+
+    /**
+     * Moves the entries, in queue order, to just before the song currently at position {@code to}
+     * ({@code to} equal to the queue length moves them to the end).
+     */
+    public List<MpdCommandResult> moveInPlaylist(Collection<MpdQueueEntry> entries, int to) throws MPDException {
+        List<MpdQueueEntry> sorted = entries.stream()
+                .sorted(Comparator.comparingInt(MpdQueueEntry::position))
+                .toList();
+
+        MpdCommandList batch = new MpdCommandList();
+        // Entries above the target go back to front, each landing right above the previous one
+        int target = to;
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            if (sorted.get(i).position() < to) {
+                batch.moveId(sorted.get(i).id(), --target);
+            }
+        }
+        // Entries below the target follow in order; moving them does not shift the positions above
+        target = to;
+        for (MpdQueueEntry entry : sorted) {
+            if (entry.position() >= to) {
+                batch.moveId(entry.id(), target++);
+            }
+        }
+        return executeBatch(batch);
     }
 
     public void clearPlaylist() throws MPDException {
-        ensureConnected();
-        mpd.getPlaylist().clearPlaylist();
+        execute("clear");
     }
 
     // Music database
     public Collection<MPDSong> getAllSongs() throws MPDException {
-        ensureConnected();
-//        return mpd.getMusicDatabase().listAllSongs();
-        return List.of();
+        return MpdResponses.parseSongs(execute("listallinfo"));
+    }
+
+    /**
+     * Songs and directory stamps below {@code path}, recursively ({@code listallinfo}).
+     */
+    public LibraryListing getLibraryListing(String path) throws MPDException {
+        List<String> lines = execute(path.isEmpty() ? "listallinfo" : "listallinfo " + MpdConnection.quote(path));
+        return new LibraryListing(MpdResponses.parseSongs(lines), MpdResponses.parseDirectories(lines));
+    }
+
+    /**
+     * Direct children of each directory ({@code lsinfo}), fetched over one connection in command lists
+     * of at most {@code mpd.batch.max-commands}.
+     */
+    public List<LibraryListing> listDirectories(List<String> paths) throws MPDException {
+        List<String> commands = paths.stream()
+                .map(path -> "lsinfo " + MpdConnection.quote(path))
+                .toList();
+        List<MpdCommandResult> results = execute(connection -> {
+            List<MpdCommandResult> listed = new ArrayList<>(commands.size());
+            for (int start = 0; start < commands.size(); start += batchMaxCommands) {
+                List<String> chunk = commands.subList(start, Math.min(commands.size(), start + batchMaxCommands));
+                List<MpdCommandResult> chunkResults = connection.executeList(chunk);
+                listed.addAll(chunkResults);
+                if (!chunkResults.get(chunkResults.size() - 1).isSuccess()) {
+                    // The failure is reported below, the remaining directories are not needed
+                    break;
+                }
+            }
+            return listed;
+        });
+
+        List<LibraryListing> listings = new ArrayList<>(results.size());
+        for (MpdCommandResult result : results) {
+            List<String> lines = linesOf(result);
+            listings.add(new LibraryListing(MpdResponses.parseSongs(lines), MpdResponses.parseDirectories(lines)));
+        }
+        return listings;
+    }
+
+    /**
+     * MPD's {@code db_update} timestamp, which changes whenever the database is updated.
+     */
+    public long getDatabaseVersion() throws MPDException {
+        return MpdResponses.parseSeconds(MpdResponses.toMap(execute("stats")).get("db_update"), 0);
+    }
+
+    /**
+     * Reads the cover of a song: the image file in its directory ({@code albumart}), or else the
+     * picture embedded in the song ({@code readpicture}). All chunks are read over one connection.
+     *
+     * @return the encoded image, or empty if MPD has none
+     */
+    public Optional<byte[]> readAlbumArt(String file) throws MPDException {
+        return execute(connection -> {
+            try {
+                connection.execute("binarylimit " + ALBUM_ART_CHUNK_SIZE);
+            } catch (MpdCommandException e) {
+                // Servers before 0.22.4 always send 8 KiB chunks
+            }
+
+            byte[] art = readBinary(connection, "albumart", file);
+            if (art.length == 0) {
+                art = readBinary(connection, "readpicture", file);
+            }
+            return art.length > 0 ? Optional.of(art) : Optional.empty();
+        });
+    }
+
+    /**
+     * Every song matching the filter ({@code search}, ignoring case).
+     */
+    public List<MPDSong> search(MpdFilter filter) throws MPDException {
+        return MpdResponses.parseSongs(execute("search " + filter.argument()));
+    }
+
+    /**
+     * Songs {@code offset} to {@code offset + limit} of those matching the filter, in database order,
+     * with the number of matches from the same command list. The count is a {@code searchcount}, which
+     * ignores case like {@code search}; {@code count} would match case-sensitively and disagree.
+     */
+    public SearchPage search(MpdFilter filter, int offset, int limit) throws MPDException {
+        String argument = filter.argument();
+        return execute(connection -> {
+            List<MpdCommandResult> results = connection.executeList(List.of(
+                    "searchcount " + argument,
+                    "search " + argument + " window " + offset + ":" + (offset + limit)));
+            Map<String, String> counts = MpdResponses.toMap(linesOf(results.get(0)));
+            return new SearchPage(
+                    offset,
+                    MpdResponses.parseSongs(linesOf(results.get(1))),
+                    MpdResponses.parseInt(counts.get("songs"), 0));
+        });
+    }
+
+    /**
+     * Appends every song matching the filter to the queue in one command ({@code searchadd}).
+     */
+    public void addSearchResults(MpdFilter filter) throws MPDException {
+        execute("searchadd " + filter.argument());
+    }
+
+    /**
+     * Appends every song matching the filter exactly, case included, to the queue ({@code findadd}).
+     */
+    public void addFindResults(MpdFilter filter) throws MPDException {
+        execute("findadd " + filter.argument());
     }
 
     public Collection<MPDSong> searchByArtist(String artist) throws MPDException {
-        ensureConnected();
-//        return mpd.getMusicDatabase().searchByArtist(artist);
-        return List.of();
+        return search(MpdFilter.contains("artist", artist));
     }
 
     public Collection<MPDSong> searchByAlbum(String album) throws MPDException {
-        ensureConnected();
-//        return mpd.getMusicDatabase().searchByAlbum(album);
-        return List.of();
+        return search(MpdFilter.contains("album", album));
     }
 
     public Collection<MPDSong> searchByTitle(String title) throws MPDException {
-        ensureConnected();
-//        return mpd.getMusicDatabase().searchByTitle(title);
-        return List.of();
+        return search(MpdFilter.contains("title", title));
     }
 
-    private void ensureConnected() throws MPDConnectionException {
-        if (!isConnected()) {
-            connect();
+    private static byte[] readBinary(MpdConnection connection, String command, String file) throws MPDException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try {
+            MpdBinaryResponse chunk;
+            do {
+                chunk = connection.executeBinary(command + " " + MpdConnection.quote(file) + " " + data.size());
+                data.writeBytes(chunk.data());
+            } while (!chunk.isEmpty() && data.size() < chunk.size());
+        } catch (MpdCommandException e) {
+            if (e.getErrorCode() == ACK_ERROR_NO_EXIST || e.getErrorCode() == ACK_ERROR_UNKNOWN) {
+                return new byte[0];
+            }
+            throw e;
+        }
+        return data.toByteArray();
+    }
+
+    private static List<String> linesOf(MpdCommandResult result) throws MPDException {
+        if (!result.isSuccess()) {
+            throw result.error() != null ? result.error() : new MPDException("Skipped: " + result.command());
+        }
+        return result.lines();
+    }
+
+    private Map<String, String> getStatus() throws MPDException {
+        return MpdResponses.toMap(execute("status"));
+    }
+
+    private List<String> execute(String command) throws MPDException {
+        return execute(connection -> connection.execute(command));
+    }
+
+    /**
+     * Runs the work on a pooled connection. Each call leases its own connection, so slow commands
+     * from one session do not hold up quick ones from another.
+     */
+    private <T> T execute(Function<MpdConnection, T> work) throws MPDException {
+        try {
+            T result = pool.execute(work);
+            connected = true;
+            return result;
+        } catch (MPDConnectionException e) {
+            connected = false;
+            throw e;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import uk.humbkr.jmpc.mpd.MpdSubsystem;
+
+import java.util.function.Consumer;
+
+/**
+ * Application-wide status hub. Fetches each player, mixer and queue state once per MPD change and
+ * fans the immutable result out to every attached UI, so additional tabs cost no MPD traffic.
+ * The queue is kept in memory and synchronized from its last-seen version.
+ */
+@Slf4j
+@Service
+public class MpdStatusHub {
+
+    private final MpdService mpdService;
+
+    private final MpdIdleListener idleListener;
+
+    private final QueueSynchronizer queueSynchronizer;
+
+    private final UiBroadcaster<PlayerSnapshot> playerBroadcaster = new UiBroadcaster<>();
+
+    private final UiBroadcaster<QueueUpdate> queueBroadcaster = new UiBroadcaster<>();
+
+    private volatile PlayerSnapshot player = PlayerSnapshot.EMPTY;
+
+    private volatile QueueSnapshot queue = QueueSnapshot.EMPTY;
+
+    private Registration changeRegistration;
+
+    public MpdStatusHub(MpdService mpdService, MpdIdleListener idleListener, QueueSynchronizer queueSynchronizer) {
+        this.mpdService = mpdService;
+        this.idleListener = idleListener;
+        this.queueSynchronizer = queueSynchronizer;
+    }
+
+    @PostConstruct
+    public void start() {
+        changeRegistration = idleListener.addChangeListener(this::onMpdChange);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+        }
+    }
+
+    public PlayerSnapshot getPlayer() {
+        return player;
+    }
+
+    public QueueSnapshot getQueue() {
+        return queue;
+    }
+
+    /**
+     * Snapshots and queue updates pushed to UIs since startup.
+     */
+    public long getPushCount() {
+        return playerBroadcaster.getDeliveryCount() + queueBroadcaster.getDeliveryCount();
+    }
+
+    /**
+     * Delivers the current player snapshot, and every later one, to the consumer through {@link UI#access}.
+     * Snapshots are only sent when MPD reports a change; clients advance the progress themselves.
+     */
+    public Registration subscribePlayer(UI ui, Consumer<PlayerSnapshot> consumer) {
+        return playerBroadcaster.subscribe(ui, consumer, () -> player);
+    }
+
+    /**
+     * Delivers the current queue, and every later change to it, to the consumer through {@link UI#access}.
+     */
+    public Registration subscribeQueue(UI ui, Consumer<QueueUpdate> consumer) {
+        return queueBroadcaster.subscribe(ui, consumer, () -> QueueUpdate.full(queue));
+    }
+
+    private void onMpdChange(MpdChangeEvent event) {
+        if (event.affects(MpdSubsystem.PLAYER) || event.affects(MpdSubsystem.PLAYLIST)) {
+            refreshPlayer();
+        } else if (event.affects(MpdSubsystem.MIXER)) {
+            refreshVolume();
+        }
+        if (event.affects(MpdSubsystem.PLAYLIST)) {
+            refreshQueue();
+        }
+    }
+
+    private void refreshPlayer() {
+        try {
+            player = mpdService.getPlayerSnapshot();
+            playerBroadcaster.broadcast(player);
+        } catch (Exception e) {
+            log.warn("Failed to fetch MPD player status", e);
+        }
+    }
+
+    private void refreshVolume() {
+        try {
+            player = player.withVolume(mpdService.getVolume());
+            playerBroadcaster.broadcast(player);
+        } catch (Exception e) {
+            log.warn("Failed to fetch MPD volume", e);
+        }
+    }
+
+    private void refreshQueue() {
+        try {
+            // Only positions changed since the last-seen version are fetched
+            QueueUpdate update = queueSynchronizer.synchronize(queue);
+            if (update.snapshot() != queue) {
+                queue = update.snapshot();
+                queueBroadcaster.broadcast(update);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to fetch MPD queue", e);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.player.Player;
+import org.bff.javampd.song.MPDSong;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable view of the player and mixer state, shared by every session.
+ *
+ * @param status        playback state
+ * @param currentSong   the song being played, or {@code null}
+ * @param elapsedMillis elapsed time at {@code fetchedAt}
+ * @param totalMillis   duration of the current song
+ * @param volume        mixer volume, 0-100
+ * @param fetchedAt     {@link System#nanoTime()} when the elapsed time was read
+ */
+public record PlayerSnapshot(Player.Status status, MPDSong currentSong, long elapsedMillis, long totalMillis,
+                             int volume, long fetchedAt) {
+
+    public static final PlayerSnapshot EMPTY = new PlayerSnapshot(Player.Status.STATUS_STOPPED, null, 0, 0, 0, 0);
+
+    public boolean isPlaying() {
+        return status == Player.Status.STATUS_PLAYING;
+    }
+
+    public Optional<MPDSong> getCurrentSong() {
+        return Optional.ofNullable(currentSong);
+    }
+
+    /**
+     * Elapsed milliseconds at the given {@link System#nanoTime()}, advanced locally while playing.
+     */
+    public long elapsedMillisAt(long nanoTime) {
+        if (!isPlaying()) {
+            return elapsedMillis;
+        }
+        long advanced = elapsedMillis + TimeUnit.NANOSECONDS.toMillis(nanoTime - fetchedAt);
+        return totalMillis > 0 ? Math.min(advanced, totalMillis) : advanced;
+    }
+
+    public PlayerSnapshot withVolume(int volume) {
+        return new PlayerSnapshot(status, currentSong, elapsedMillis, totalMillis, volume, fetchedAt);
+    }
+
+}
@@ -0,0 +1,13 @@
+package uk.humbkr.jmpc.service;
+
+import java.util.Map;
+
+/**
+ * Queue positions changed since a given version, as reported by {@code plchangesposid}.
+ *
+ * @param version       the current queue version
+ * @param length        the current queue length
+ * @param idsByPosition changed positions mapped to the song id now at that position
+ */
+public record QueueChanges(int version, int length, Map<Integer, Integer> idsByPosition) {
+}
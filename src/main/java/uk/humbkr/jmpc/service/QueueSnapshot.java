@@ -0,0 +1,25 @@
+package uk.humbkr.jmpc.service;
+
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.util.List;
+
+/**
+ * Immutable copy of the MPD queue, shared by every session.
+ *
+ * @param version MPD's {@code playlist} version, bumped on every queue change
+ * @param entries the queue in order, the entry at index {@code i} has position {@code i}
+ */
+public record QueueSnapshot(int version, List<MpdQueueEntry> entries) {
+
+    public static final QueueSnapshot EMPTY = new QueueSnapshot(-1, List.of());
+
+    public int length() {
+        return entries.size();
+    }
+
+    public MpdQueueEntry entry(int position) {
+        return entries.get(position);
+    }
+
+}
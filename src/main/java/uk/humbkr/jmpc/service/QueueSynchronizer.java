@@ -0,0 +1,123 @@
+package uk.humbkr.jmpc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bff.javampd.MPDException;
+import org.bff.javampd.song.MPDSong;
+import org.springframework.stereotype.Component;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a queue snapshot up to date from the last-seen queue version.
+ * <p>
+ * {@code plchangesposid} reports which song id now sits at each changed position. Songs that were
+ * only moved are taken from the current snapshot, so tags are fetched for newly added songs only. A
+ * position reported with the id it already had changed in place, e.g. retagged by a database update,
+ * and is fetched again.
+ */
+@Slf4j
+@Component
+public class QueueSynchronizer {
+
+    private final MpdService mpdService;
+
+    public QueueSynchronizer(MpdService mpdService) {
+        this.mpdService = mpdService;
+    }
+
+    /**
+     * Loads the whole queue.
+     */
+    public QueueUpdate load() throws MPDException {
+        return QueueUpdate.full(mpdService.getQueueSnapshot());
+    }
+
+    /**
+     * @return an update holding {@code current} itself if the queue did not change
+     */
+    public QueueUpdate synchronize(QueueSnapshot current) throws MPDException {
+        if (current.version() < 0) {
+            return load();
+        }
+
+        QueueChanges changes = mpdService.getQueueChanges(current.version());
+        if (changes.version() == current.version()) {
+            return new QueueUpdate(current, false, List.of());
+        }
+        if (changes.version() < current.version()) {
+            // Versions restart with MPD
+            return load();
+        }
+
+        int length = changes.length();
+        MpdQueueEntry[] entries = new MpdQueueEntry[length];
+        for (int position = 0; position < Math.min(length, current.length()); position++) {
+            entries[position] = current.entry(position);
+        }
+
+        Map<Integer, Integer> idsByPosition = new HashMap<>();
+        changes.idsByPosition().forEach((position, id) -> {
+            if (position < length) {
+                idsByPosition.put(position, id);
+            }
+        });
+        Map<Integer, MPDSong> movedSongs = songsById(current, new HashSet<>(idsByPosition.values()));
+
+        List<MpdQueueEntry> changed = new ArrayList<>(idsByPosition.size());
+        List<Integer> missing = new ArrayList<>();
+        idsByPosition.forEach((position, id) -> {
+            boolean moved = position >= current.length() || current.entry(position).id() != id;
+            MPDSong song = moved ? movedSongs.get(id) : null;
+            if (song != null) {
+                entries[position] = new MpdQueueEntry(position, id, song);
+                changed.add(entries[position]);
+            } else {
+                missing.add(position);
+            }
+        });
+
+        for (MpdQueueEntry entry : mpdService.getQueueEntries(missing)) {
+            Integer expectedId = idsByPosition.get(entry.position());
+            if (expectedId == null || expectedId != entry.id()) {
+                // The queue changed again in between, the next idle event catches up from scratch
+                log.debug("Queue changed while synchronizing, reloading");
+                return load();
+            }
+            entries[entry.position()] = entry;
+            changed.add(entry);
+        }
+
+        for (MpdQueueEntry entry : entries) {
+            if (entry == null) {
+                return load();
+            }
+        }
+
+        log.debug("Synchronized queue version {} -> {}: {} positions changed, {} fetched",
+                current.version(), changes.version(), changed.size(), missing.size());
+        QueueSnapshot snapshot = new QueueSnapshot(changes.version(), Collections.unmodifiableList(Arrays.asList(entries)));
+        return new QueueUpdate(snapshot, false, changed);
+    }
+
+    private static Map<Integer, MPDSong> songsById(QueueSnapshot snapshot, Set<Integer> ids) {
+        Map<Integer, MPDSong> songs = new HashMap<>();
+        if (ids.isEmpty()) {
+            return songs;
+        }
+        for (MpdQueueEntry entry : snapshot.entries()) {
+            if (ids.contains(entry.id())) {
+                songs.put(entry.id(), entry.song());
+            }
+        }
+        return songs;
+    }
+
+}
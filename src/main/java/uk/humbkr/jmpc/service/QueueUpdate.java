@@ -0,0 +1,24 @@
+package uk.humbkr.jmpc.service;
+
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.util.List;
+
+/**
+ * A new queue snapshot together with the entries that changed since the previous one.
+ *
+ * @param snapshot the queue as it is now
+ * @param full     {@code true} when the queue was reloaded wholesale and no position-level diff is known
+ * @param changed  entries at positions MPD reported as changed, as they are now
+ */
+public record QueueUpdate(QueueSnapshot snapshot, boolean full, List<MpdQueueEntry> changed) {
+
+    public QueueUpdate {
+        changed = List.copyOf(changed);
+    }
+
+    public static QueueUpdate full(QueueSnapshot snapshot) {
+        return new QueueUpdate(snapshot, true, List.of());
+    }
+
+}
@@ -0,0 +1,15 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+
+import java.util.List;
+
+/**
+ * One window of a database search, read in the same round trip as the number of matches.
+ *
+ * @param offset position of the first song among all matches
+ * @param songs  the matching songs in the window, in database order
+ * @param total  the number of songs matching the filter
+ */
+public record SearchPage(int offset, List<MPDSong> songs, int total) {
+}
@@ -0,0 +1,72 @@
+package uk.humbkr.jmpc.service;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.shared.Registration;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Fans values out to subscribed UIs through {@link UI#access}. Subscribers whose UI went away are dropped.
+ */
+public class UiBroadcaster<T> {
+
+    private final List<Subscriber<T>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final LongAdder deliveries = new LongAdder();
+
+    /**
+     * Registers the consumer and delivers the current value to it. The value is read inside the
+     * {@link UI#access} task, after registering: owners update it before broadcasting, so it is never
+     * older than a broadcast queued ahead of it, and any later broadcast reaches the new subscriber.
+     */
+    public Registration subscribe(UI ui, Consumer<T> consumer, Supplier<T> current) {
+        Subscriber<T> subscriber = new Subscriber<>(ui, consumer);
+        subscribers.add(subscriber);
+        subscriber.deliver(current);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    public void broadcast(T value) {
+        for (Subscriber<T> subscriber : subscribers) {
+            if (subscriber.deliver(value)) {
+                deliveries.increment();
+            } else {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Values handed to subscribers by {@link #broadcast}, i.e. pushes to the browser, since startup.
+     */
+    public long getDeliveryCount() {
+        return deliveries.sum();
+    }
+
+    private record Subscriber<T>(UI ui, Consumer<T> consumer) {
+
+        boolean deliver(T value) {
+            return deliver(() -> value);
+        }
+
+        boolean deliver(Supplier<T> value) {
+            try {
+                ui.access(() -> consumer.accept(value.get()));
+                return true;
+            } catch (UIDetachedException e) {
+                return false;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package uk.humbkr.jmpc.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one scheduler for background work started on behalf of UIs.
+ * <p>
+ * Tasks run on virtual threads. Cancelling a returned future before its call started skips the call;
+ * the UI cancels the calls of a component when it detaches, so nothing queued for a closed view
+ * reaches MPD. The scheduler itself lives as long as the application.
+ */
+@Service
+public class UiTaskScheduler {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ui-task-", 0).factory());
+
+    private final AtomicInteger liveTasks = new AtomicInteger();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the call on a virtual thread. Cancelling the returned future before the call started skips it.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        Task task = new Task();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Set before it runs, so a cancellation can never miss it
+        task.future = new FutureTask<>(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                task.finish();
+            }
+        }, null);
+        executor.execute(task.future);
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Background tasks submitted and not yet finished or cancelled.
+     */
+    public int getLiveTaskCount() {
+        return liveTasks.get();
+    }
+
+    private final class Task {
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private FutureTask<Void> future;
+
+        private Task() {
+            liveTasks.incrementAndGet();
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                liveTasks.decrementAndGet();
+            }
+        }
+
+        private void cancel() {
+            future.cancel(false);
+            finish();
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package uk.humbkr.jmpc.ui;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.shared.Registration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Applies the outcome of background MPD calls to a component through {@link UI#access}, pushed to the browser.
+ * Calls are bound to the component: those not yet started when it detaches are cancelled.
+ */
+@Slf4j
+final class AsyncUi {
+
+    private AsyncUi() {
+    }
+
+    /**
+     * Shows a notification if the call fails; state changes arrive through the status hub anyway.
+     */
+    static void run(Component component, CompletableFuture<?> future) {
+        onSuccess(component, future, result -> {
+        });
+    }
+
+    static <T> void onSuccess(Component component, CompletableFuture<T> future, Consumer<T> action) {
+        UI ui = component.getUI().orElseGet(UI::getCurrent);
+        if (ui == null) {
+            return;
+        }
+
+        Registration detachRegistration = component.addDetachListener(e -> future.cancel(false));
+        future.whenComplete((result, error) -> {
+            try {
+                ui.access(() -> {
+                    detachRegistration.remove();
+                    if (error == null) {
+                        action.accept(result);
+                    } else if (!(error instanceof CancellationException)) {
+                        showError(error);
+                    }
+                });
+            } catch (UIDetachedException e) {
+                // The view went away while the call was running
+            }
+        });
+    }
+
+    private static void showError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        log.warn("MPD command failed: {}", cause.getMessage());
+        Notification notification = Notification.show("MPD command failed: " + cause.getMessage(), 3000,
+                Notification.Position.BOTTOM_END);
+        notification.addThemeVariants(NotificationVariant.LUMO_ERROR);
+    }
+
+}
@@ -0,0 +1,45 @@
+package uk.humbkr.jmpc.ui;
+
+/**
+ * Formats song lengths for the grids' duration columns.
+ * <p>
+ * Lengths up to {@value #CACHED_SECONDS} seconds are formatted once and then served from a shared
+ * table, so rendering a page of rows allocates no strings. The table fills lazily; two threads
+ * formatting the same length at once just store equal strings.
+ */
+public final class DurationFormat {
+
+    private static final String UNKNOWN = "--:--";
+
+    private static final int CACHED_SECONDS = 2 * 60 * 60;
+
+    private static final String[] CACHE = new String[CACHED_SECONDS];
+
+    private DurationFormat() {
+    }
+
+    /**
+     * @return {@code m:ss}, or {@code --:--} for unknown lengths
+     */
+    public static String format(int seconds) {
+        if (seconds <= 0) return UNKNOWN;
+        if (seconds >= CACHED_SECONDS) return compute(seconds);
+
+        String formatted = CACHE[seconds];
+        if (formatted == null) {
+            formatted = compute(seconds);
+            CACHE[seconds] = formatted;
+        }
+        return formatted;
+    }
+
+    private static String compute(int seconds) {
+        int secs = seconds % 60;
+        StringBuilder formatted = new StringBuilder(8).append(seconds / 60).append(':');
+        if (secs < 10) {
+            formatted.append('0');
+        }
+        return formatted.append(secs).toString();
+    }
+
+}
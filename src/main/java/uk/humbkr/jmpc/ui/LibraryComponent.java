@@ -1,33 +1,110 @@
 package uk.humbkr.jmpc.ui;
 
 import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.contextmenu.GridContextMenu;
 import com.vaadin.flow.component.html.H3;
 import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
-import com.vaadin.flow.data.renderer.ComponentRenderer;
+import com.vaadin.flow.data.provider.CallbackDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
+import com.vaadin.flow.data.renderer.LitRenderer;
 import com.vaadin.flow.data.value.ValueChangeMode;
+import com.vaadin.flow.shared.Registration;
 import org.bff.javampd.song.MPDSong;
-import uk.humbkr.jmpc.service.MpdService;
-
+import uk.humbkr.jmpc.albumart.AlbumArtUrls;
+import uk.humbkr.jmpc.albumart.ThumbnailSize;
+import uk.humbkr.jmpc.library.LibraryDiff;
+import uk.humbkr.jmpc.library.LibraryIndex;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.library.LibraryUpdate;
+import uk.humbkr.jmpc.library.SongStore;
+import uk.humbkr.jmpc.library.SortKey;
+import uk.humbkr.jmpc.library.SortOrders;
+import uk.humbkr.jmpc.library.SongView;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+import uk.humbkr.jmpc.service.LibrarySearchService;
+import uk.humbkr.jmpc.service.LibraryService;
+import uk.humbkr.jmpc.service.MpdAsyncService;
+import uk.humbkr.jmpc.service.SearchPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class LibraryComponent extends VerticalLayout {
 
-    private final MpdService mpdService;
+    // Ranked matches shown before the other songs containing the query
+    private static final int RANKED_HITS = 100;
+
+    private final MpdAsyncService mpdService;
+
+    private final LibraryService libraryService;
 
-    private Grid<MPDSong> libraryGrid;
+    private final LibrarySearchService searchService;
+
+    // Browse and search on MPD instead of the local snapshot
+    private final boolean remote;
+
+    private Grid<SongView> libraryGrid;
 
     private TextField searchField;
 
-    private Collection<MPDSong> allSongs;
+    private Button addSelectedButton;
+
+    private Button addAllButton;
+
+    private CallbackDataProvider<SongView, Void> libraryProvider;
+
+    private LibraryIndex index;
+
+    // Ordinals matching the search, null while showing the whole library
+    private int[] matches;
+
+    // The search in remote mode
+    private MpdFilter filter = MpdFilter.ALL;
+
+    // Matches of the remote search as last read from MPD, and the pages of it still being read
+    private int remoteTotal;
 
-    public LibraryComponent(MpdService mpdService) {
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    // The grid's sort, null for library order (or ranking while searching)
+    private SortKey sortKey;
+
+    private boolean sortDescending;
+
+    // Last matches rearranged in a sort order: sortedSource in sortedKey order
+    private int[] sortedMatches;
+
+    private int[] sortedSource;
+
+    private SortKey sortedKey;
+
+    private boolean sortedDescending;
+
+    private Registration libraryRegistration;
+
+    public LibraryComponent(MpdAsyncService mpdService, LibraryService libraryService,
+                            LibrarySearchService searchService) {
         this.mpdService = mpdService;
+        this.libraryService = libraryService;
+        this.searchService = searchService;
+        this.remote = libraryService.isRemote();
 
         createComponents();
         setupLayout();
@@ -43,40 +120,75 @@ public class LibraryComponent extends VerticalLayout {
         searchField.setValueChangeMode(ValueChangeMode.LAZY);
         searchField.addValueChangeListener(e -> filterLibrary(e.getValue()));
 
+        // Bulk add buttons
+        addSelectedButton = new Button("Add selected", VaadinIcon.PLUS.create());
+        addSelectedButton.addThemeVariants(ButtonVariant.LUMO_SUCCESS, ButtonVariant.LUMO_SMALL);
+        addSelectedButton.setEnabled(false);
+        addSelectedButton.addClickListener(e -> addSelectedToPlaylist());
+
+        addAllButton = new Button("Add all", VaadinIcon.PLUS_CIRCLE.create());
+        addAllButton.addThemeVariants(ButtonVariant.LUMO_SMALL);
+        addAllButton.setTooltipText("Add every song shown to the playlist");
+        addAllButton.addClickListener(e -> addShownToPlaylist());
+
         // Library grid
-        libraryGrid = new Grid<>(MPDSong.class, false);
+        libraryGrid = new Grid<>(SongView.class, false);
         libraryGrid.setHeightFull();
+        libraryGrid.setSelectionMode(Grid.SelectionMode.MULTI);
+
+        // Rows are flyweights over the shared song store, the session only holds the visible page
+        libraryProvider = new CallbackDataProvider<>(this::fetchSongs, query -> countSongs(), SongView::getFile);
+        libraryGrid.setItems(libraryProvider);
+        libraryGrid.addSelectionListener(e -> addSelectedButton.setEnabled(!e.getAllSelectedItems().isEmpty()));
+
+        // Configure columns; covers are loaded lazily by the browser, only for rows it shows
+        libraryGrid.addColumn(LitRenderer.<SongView>of(
+                        "<img src=${item.cover} loading=\"lazy\" width=\"32\" height=\"32\" alt=\"\""
+                                + " style=\"object-fit: cover; border-radius: 2px\""
+                                + " onerror=\"this.style.visibility='hidden'\">")
+                        .withProperty("cover", song -> AlbumArtUrls.song(song.getFile(), ThumbnailSize.SMALL)))
+                .setFlexGrow(0)
+                .setWidth("56px");
 
-        // Configure columns
-        libraryGrid.addColumn(song -> {
-            String title = song.getTitle();
-            return title != null ? title : song.getName();
-        }).setHeader("Title").setFlexGrow(2);
+        Grid.Column<SongView> titleColumn = libraryGrid.addColumn(SongView::getDisplayTitle)
+                .setHeader("Title")
+                .setFlexGrow(2);
 
-        libraryGrid.addColumn(MPDSong::getArtistName)
+        Grid.Column<SongView> artistColumn = libraryGrid.addColumn(SongView::getArtistName)
                 .setHeader("Artist")
                 .setFlexGrow(1);
 
-        libraryGrid.addColumn(MPDSong::getAlbumName)
+        Grid.Column<SongView> albumColumn = libraryGrid.addColumn(SongView::getAlbumName)
                 .setHeader("Album")
                 .setFlexGrow(1);
 
-        libraryGrid.addColumn(song -> formatDuration(song.getLength()))
+        Grid.Column<SongView> durationColumn = libraryGrid.addColumn(song -> DurationFormat.format(song.getLength()))
                 .setHeader("Duration")
                 .setFlexGrow(0)
                 .setWidth("80px");
 
-        // Action column with add button
-        libraryGrid.addColumn(new ComponentRenderer<>(song -> {
-            Button addButton = new Button(VaadinIcon.PLUS.create());
-            addButton.addThemeVariants(ButtonVariant.LUMO_ICON, ButtonVariant.LUMO_SUCCESS, ButtonVariant.LUMO_SMALL);
-            addButton.addClickListener(e -> addToPlaylist(song));
-            addButton.setTooltipText("Add to playlist");
-            return addButton;
-        })).setHeader("Actions").setFlexGrow(0).setWidth("80px");
+        // Sorted through the snapshot's precomputed orders, MPD pages stay in database order
+        if (!remote) {
+            titleColumn.setSortProperty(SortKey.TITLE.getProperty());
+            artistColumn.setSortProperty(SortKey.ARTIST.getProperty());
+            albumColumn.setSortProperty(SortKey.ALBUM.getProperty());
+            durationColumn.setSortProperty(SortKey.DURATION.getProperty());
+        }
+
+        // Action column with add button, a template the browser stamps per row; only clicks reach the server
+        libraryGrid.addColumn(LitRenderer.<SongView>of(
+                        "<vaadin-button theme=\"icon success small\" title=\"Add to playlist\""
+                                + " aria-label=\"Add to playlist\" @click=${add}>"
+                                + "<vaadin-icon icon=\"vaadin:plus\"></vaadin-icon></vaadin-button>")
+                        .withFunction("add", song -> addToPlaylist(song.toSong())))
+                .setHeader("Actions").setFlexGrow(0).setWidth("80px");
 
         // Double-click to add to playlist
-        libraryGrid.addItemDoubleClickListener(e -> addToPlaylist(e.getItem()));
+        libraryGrid.addItemDoubleClickListener(e -> addToPlaylist(e.getItem().toSong()));
+
+        // Right-click to add the whole album
+        GridContextMenu<SongView> contextMenu = libraryGrid.addContextMenu();
+        contextMenu.addItem("Add album", e -> e.getItem().ifPresent(this::addAlbumToPlaylist));
     }
 
     private void setupLayout() {
@@ -87,86 +199,258 @@ public class LibraryComponent extends VerticalLayout {
         // Header
         H3 title = new H3("Music Library");
 
+        // Bulk actions
+        HorizontalLayout actionsLayout = new HorizontalLayout(addSelectedButton, addAllButton);
+        actionsLayout.setAlignItems(Alignment.CENTER);
+
         // Header layout with search
         VerticalLayout headerLayout = new VerticalLayout();
         headerLayout.setPadding(false);
         headerLayout.setSpacing(true);
-        headerLayout.add(title, searchField);
+        headerLayout.add(title, searchField, actionsLayout);
 
         add(headerLayout, libraryGrid);
         setFlexGrow(1, libraryGrid);
     }
 
     private void loadLibrary() {
-        try {
-            if (mpdService.isConnected()) {
-                allSongs = mpdService.getAllSongs();
-                libraryGrid.setItems(allSongs);
+        showLibrary(libraryService.getSnapshot());
+    }
+
+    private void showLibrary(LibrarySnapshot snapshot) {
+        index = snapshot.index();
+        filterLibrary(searchField.getValue());
+    }
+
+    private void onLibraryUpdate(LibraryUpdate update) {
+        LibraryDiff diff = update.diff();
+        if (diff.isStructural()) {
+            showLibrary(update.snapshot());
+            return;
+        }
+
+        // Only tags changed: rows keep their place unless the search result changed or a sort applies
+        int[] previousMatches = matches;
+        index = update.snapshot().index();
+        matches = search(searchField.getValue());
+        if (sortKey == null && Arrays.equals(previousMatches, matches)) {
+            SongStore store = index.getStore();
+            for (MPDSong song : diff.changed()) {
+                int ordinal = store.ordinalOf(song.getFile());
+                if (ordinal >= 0) {
+                    libraryProvider.refreshItem(store.view(ordinal));
+                }
             }
-        } catch (Exception e) {
-            // Handle error - could show notification
+        } else {
+            libraryProvider.refreshAll();
         }
     }
 
     private void filterLibrary(String searchTerm) {
-        if (allSongs == null) return;
+        if (remote) {
+            filter = LibrarySearchService.compile(searchTerm);
+            remoteTotal = 0;
+            loadingPages.clear();
+            libraryProvider.refreshAll();
+            loadRemoteSongs(0, LibrarySearchService.PAGE_SIZE);
+            return;
+        }
+        if (index == null) return;
 
+        matches = search(searchTerm);
+        libraryProvider.refreshAll();
+    }
+
+    private int[] search(String searchTerm) {
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            libraryGrid.setItems(allSongs);
-            return;
+            return null;
+        }
+
+        // Matching runs on the shared index's pre-folded fields, the best matches first
+        return index.searchRanked(searchTerm, RANKED_HITS);
+    }
+
+    private Stream<SongView> fetchSongs(Query<SongView, Void> query) {
+        if (remote) {
+            return fetchRemoteSongs(query.getOffset(), query.getLimit());
+        }
+
+        QuerySortOrder order = query.getSortOrders().isEmpty() ? null : query.getSortOrders().getFirst();
+        sortKey = order != null ? SortKey.fromProperty(order.getSorted()).orElse(null) : null;
+        sortDescending = order != null && order.getDirection() == SortDirection.DESCENDING;
+
+        LibraryIndex currentIndex = index;
+        int offset = query.getOffset();
+        int end = Math.min(countSongs(), offset + query.getLimit());
+        if (currentIndex == null || offset >= end) {
+            return Stream.empty();
         }
 
-        String lowerCaseFilter = searchTerm.toLowerCase().trim();
+        IntUnaryOperator rows = rows(currentIndex, matches);
+        return IntStream.range(offset, end).mapToObj(row -> currentIndex.song(rows.applyAsInt(row)));
+    }
+
+    /**
+     * Maps grid rows to ordinals in the current sort; a page of the whole library is a lookup in the
+     * precomputed order, search matches are rearranged once per search and sort.
+     */
+    private IntUnaryOperator rows(LibraryIndex currentIndex, int[] currentMatches) {
+        if (sortKey == null) {
+            return currentMatches != null ? row -> currentMatches[row] : row -> row;
+        }
 
-        Collection<MPDSong> filteredSongs = allSongs.stream()
-                .filter(song -> matchesFilter(song, lowerCaseFilter))
-                .collect(Collectors.toList());
+        SortOrders orders = currentIndex.getSortOrders();
+        SortKey key = sortKey;
+        boolean descending = sortDescending;
+        if (currentMatches == null) {
+            return row -> orders.ordinalAt(key, descending, row);
+        }
 
-        libraryGrid.setItems(filteredSongs);
+        if (sortedMatches == null || sortedSource != currentMatches
+                || sortedKey != key || sortedDescending != descending) {
+            sortedMatches = orders.sort(currentMatches, key, descending);
+            sortedSource = currentMatches;
+            sortedKey = key;
+            sortedDescending = descending;
+        }
+        int[] sorted = sortedMatches;
+        return row -> sorted[row];
+    }
+
+    private int countSongs() {
+        if (remote) {
+            return remoteTotal;
+        }
+        if (index == null) {
+            return 0;
+        }
+        return matches != null ? matches.length : index.size();
     }
 
-    private boolean matchesFilter(MPDSong song, String filter) {
-        // Check title
-        String title = song.getTitle();
-        if (title != null && title.toLowerCase().contains(filter)) {
-            return true;
+    /**
+     * Serves a page of the remote search from the page cache only; missing pages are read off the
+     * request thread and the grid is refreshed once they arrive.
+     */
+    private Stream<SongView> fetchRemoteSongs(int offset, int limit) {
+        int end = Math.min(remoteTotal, offset + limit);
+        if (offset >= end) {
+            return Stream.empty();
         }
 
-        // Check filename if no title
-        if (title == null && song.getName() != null && song.getName().toLowerCase().contains(filter)) {
-            return true;
+        Optional<SearchPage> cached = searchService.cached(filter, offset, end - offset);
+        if (cached.isEmpty()) {
+            loadRemoteSongs(offset, end - offset);
+            return Stream.empty();
         }
 
-        // Check artist
-        String artist = song.getArtistName();
-        if (artist != null && artist.toLowerCase().contains(filter)) {
-            return true;
+        SearchPage page = cached.get();
+        if (page.total() != remoteTotal) {
+            // The database changed since the count, correct it once this round trip is over
+            int total = page.total();
+            getUI().ifPresent(ui -> ui.access(() -> {
+                remoteTotal = total;
+                libraryProvider.refreshAll();
+            }));
         }
 
-        // Check album
-        String album = song.getAlbumName();
-        if (album != null && album.toLowerCase().contains(filter)) {
-            return true;
+        // A small store per page, viewed in MPD's order
+        List<MPDSong> songs = page.songs();
+        SongStore store = SongStore.of(songs);
+        return songs.stream().map(song -> store.view(store.ordinalOf(song.getFile())));
+    }
+
+    private void loadRemoteSongs(int offset, int limit) {
+        List<Integer> pages = IntStream.rangeClosed(offset / LibrarySearchService.PAGE_SIZE,
+                (offset + limit - 1) / LibrarySearchService.PAGE_SIZE).boxed().toList();
+        if (!loadingPages.addAll(pages)) {
+            return;
         }
 
-        return false;
+        // A failed read shows a notification and is tried again with the next search
+        MpdFilter requested = filter;
+        AsyncUi.onSuccess(this, mpdService.searchLibrary(requested, offset, limit), page -> {
+            if (!requested.equals(filter)) {
+                return;
+            }
+            loadingPages.removeAll(pages);
+            remoteTotal = page.total();
+            libraryProvider.refreshAll();
+        });
+    }
+
+    private void addShownToPlaylist() {
+        if (remote) {
+            AsyncUi.run(this, mpdService.addSearchResults(filter));
+        } else {
+            addAllToPlaylist(shownSongs());
+        }
+    }
+
+    private List<MPDSong> shownSongs() {
+        LibraryIndex currentIndex = index;
+        int[] currentMatches = matches;
+        if (currentIndex == null) {
+            return List.of();
+        }
+        SongStore store = currentIndex.getStore();
+        if (currentMatches == null && sortKey == null) {
+            return store.songs();
+        }
+
+        // In the order shown
+        int count = currentMatches != null ? currentMatches.length : store.size();
+        IntUnaryOperator rows = rows(currentIndex, currentMatches);
+        List<MPDSong> songs = new ArrayList<>(count);
+        for (int row = 0; row < count; row++) {
+            songs.add(store.song(rows.applyAsInt(row)));
+        }
+        return songs;
     }
 
     private void addToPlaylist(MPDSong song) {
-        try {
-            mpdService.addToPlaylist(song);
-            // Could show a brief notification that song was added
-        } catch (Exception e) {
-            // Handle error
+        AsyncUi.run(this, mpdService.addToPlaylist(song));
+    }
+
+    private void addSelectedToPlaylist() {
+        addAllToPlaylist(libraryGrid.getSelectedItems().stream().map(SongView::toSong).toList());
+        libraryGrid.deselectAll();
+    }
+
+    private void addAlbumToPlaylist(SongView song) {
+        SongStore store = song.store();
+        int album = store.albumId(song.ordinal());
+        if (album == SongStore.NONE) {
+            addToPlaylist(song.toSong());
+            return;
+        }
+
+        if (remote) {
+            // Only the page is local, MPD adds the rest of the album
+            String directory = store.pooled(store.directoryId(song.ordinal()));
+            List<MpdFilter> albumFilter = new ArrayList<>(List.of(MpdFilter.equalTo("album", song.getAlbumName())));
+            if (!directory.isEmpty()) {
+                albumFilter.add(MpdFilter.base(directory));
+            }
+            AsyncUi.run(this, mpdService.addFindResults(MpdFilter.and(albumFilter)));
+            return;
         }
+
+        // Same album in the same directory, compared by pool id
+        int directory = store.directoryId(song.ordinal());
+        List<MPDSong> albumSongs = new ArrayList<>();
+        for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+            if (store.albumId(ordinal) == album && store.directoryId(ordinal) == directory) {
+                albumSongs.add(store.song(ordinal));
+            }
+        }
+        addAllToPlaylist(albumSongs);
     }
 
-    private String formatDuration(int seconds) {
-        if (seconds <= 0) return "--:--";
+    private void addAllToPlaylist(Collection<MPDSong> songs) {
+        if (songs.isEmpty()) return;
 
-        int mins = seconds / 60;
-        int secs = seconds % 60;
-        return String.format("%d:%02d", mins, secs);
+        // One command list instead of a round trip per song
+        AsyncUi.run(this, mpdService.addAllToPlaylist(List.copyOf(songs)));
     }
 
     public void refreshLibrary() {
@@ -176,7 +460,20 @@ public class LibraryComponent extends VerticalLayout {
     @Override
     protected void onAttach(AttachEvent attachEvent) {
         super.onAttach(attachEvent);
-        loadLibrary();
+        libraryRegistration = libraryService.subscribe(attachEvent.getUI(), this::onLibraryUpdate);
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+
+        // Page reads still running are cancelled, the grid asks for them again when reattached
+        loadingPages.clear();
+
+        if (libraryRegistration != null) {
+            libraryRegistration.remove();
+            libraryRegistration = null;
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -10,12 +10,21 @@ import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.theme.lumo.LumoUtility;
 import org.springframework.beans.factory.annotation.Autowired;
-import uk.humbkr.jmpc.service.MpdService;
+import uk.humbkr.jmpc.service.LibrarySearchService;
+import uk.humbkr.jmpc.service.LibraryService;
+import uk.humbkr.jmpc.service.MpdAsyncService;
+import uk.humbkr.jmpc.service.MpdStatusHub;
 
 @Route("")
 public class MainView extends AppLayout {
 
-    private final MpdService mpdService;
+    private final MpdAsyncService mpdService;
+
+    private final MpdStatusHub statusHub;
+
+    private final LibraryService libraryService;
+
+    private final LibrarySearchService searchService;
 
     private PlayerControlsComponent playerControls;
 
@@ -24,8 +33,12 @@ public class MainView extends AppLayout {
     private LibraryComponent library;
 
     @Autowired
-    public MainView(MpdService mpdService) {
+    public MainView(MpdAsyncService mpdService, MpdStatusHub statusHub, LibraryService libraryService,
+                    LibrarySearchService searchService) {
         this.mpdService = mpdService;
+        this.statusHub = statusHub;
+        this.libraryService = libraryService;
+        this.searchService = searchService;
 
         createHeader();
         createDrawer();
@@ -71,7 +84,7 @@ public class MainView extends AppLayout {
         content.setSpacing(true);
 
         // Player controls at the bottom
-        playerControls = new PlayerControlsComponent(mpdService);
+        playerControls = new PlayerControlsComponent(mpdService, statusHub);
 
         // Main content area with playlist and library
         HorizontalLayout mainContent = new HorizontalLayout();
@@ -79,11 +92,11 @@ public class MainView extends AppLayout {
         mainContent.setSpacing(true);
 
         // Playlist on the left
-        playlist = new PlaylistComponent(mpdService);
+        playlist = new PlaylistComponent(mpdService, statusHub);
         playlist.setWidth("50%");
 
         // Library on the right
-        library = new LibraryComponent(mpdService);
+        library = new LibraryComponent(mpdService, libraryService, searchService);
         library.setWidth("50%");
 
         mainContent.add(playlist, library);
@@ -99,12 +112,8 @@ public class MainView extends AppLayout {
     @Override
     protected void onAttach(AttachEvent attachEvent) {
         super.onAttach(attachEvent);
-        // Initialize MPD connection
-        try {
-            mpdService.connect();
-        } catch (Exception e) {
-            // Handle connection error
-        }
+        // Initialize MPD connection without holding up the request
+        AsyncUi.run(this, mpdService.connect());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package uk.humbkr.jmpc.ui;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.HasSize;
+import com.vaadin.flow.component.Tag;
+import com.vaadin.flow.component.dependency.JsModule;
+
+/**
+ * Progress bar and time label animated in the browser.
+ * <p>
+ * The server only sends the elapsed time, duration and playback state when they change; the client
+ * anchors the elapsed time to the moment it arrived and advances it locally while playing.
+ */
+@Tag("jmpc-progress")
+@JsModule("./components/jmpc-progress.js")
+public class PlaybackProgress extends Component implements HasSize {
+
+    public void setPlayback(long elapsedMillis, long durationMillis, boolean playing) {
+        getElement().setProperty("elapsed", elapsedMillis);
+        getElement().setProperty("duration", durationMillis);
+        getElement().setProperty("playing", playing);
+    }
+
+}
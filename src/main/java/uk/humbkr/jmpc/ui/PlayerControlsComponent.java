@@ -2,32 +2,30 @@ package uk.humbkr.jmpc.ui;
 
 import com.vaadin.flow.component.AttachEvent;
 import com.vaadin.flow.component.DetachEvent;
-import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.FlexComponent;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
-import com.vaadin.flow.component.progressbar.ProgressBar;
-import org.bff.javampd.player.Player;
-import org.bff.javampd.playlist.MPDPlaylistSong;
+import com.vaadin.flow.shared.Registration;
 import org.bff.javampd.song.MPDSong;
 import org.vaadin.addons.componentfactory.PaperSlider;
-import uk.humbkr.jmpc.service.MpdService;
+import uk.humbkr.jmpc.albumart.AlbumArtUrls;
+import uk.humbkr.jmpc.albumart.ThumbnailSize;
+import uk.humbkr.jmpc.service.MpdAsyncService;
+import uk.humbkr.jmpc.service.MpdStatusHub;
+import uk.humbkr.jmpc.service.PlayerSnapshot;
 
 import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class PlayerControlsComponent extends VerticalLayout {
 
-    private final MpdService mpdService;
+    private final MpdAsyncService mpdService;
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final MpdStatusHub statusHub;
 
     private Button playPauseButton;
 
@@ -39,16 +37,17 @@ public class PlayerControlsComponent extends VerticalLayout {
 
     private PaperSlider volumeSlider;
 
-    private ProgressBar progressBar;
+    private PlaybackProgress playbackProgress;
 
     private Span songInfoLabel;
 
-    private Span timeLabel;
+    private Image coverImage;
 
-    private Future<?> pollingRegistration;
+    private Registration statusRegistration;
 
-    public PlayerControlsComponent(MpdService mpdService) {
+    public PlayerControlsComponent(MpdAsyncService mpdService, MpdStatusHub statusHub) {
         this.mpdService = mpdService;
+        this.statusHub = statusHub;
 
         createControls();
         setupLayout();
@@ -56,18 +55,23 @@ public class PlayerControlsComponent extends VerticalLayout {
     }
 
     private void createControls() {
+        // Cover of the current song, hidden when there is none
+        coverImage = new Image();
+        coverImage.setAlt("");
+        coverImage.setWidth("96px");
+        coverImage.setHeight("96px");
+        coverImage.getStyle().set("object-fit", "cover").set("border-radius", "4px");
+        coverImage.getElement().setAttribute("onerror", "this.style.visibility='hidden'");
+        coverImage.getElement().setAttribute("onload", "this.style.visibility='visible'");
+        coverImage.setVisible(false);
+
         // Song info
         songInfoLabel = new Span("No song playing");
         songInfoLabel.getStyle().set("font-weight", "bold");
 
-        // Progress bar
-        progressBar = new ProgressBar();
-        progressBar.setWidthFull();
-        progressBar.setMin(0);
-        progressBar.setMax(100);
-
-        // Time display
-        timeLabel = new Span("00:00 / 00:00");
+        // Progress bar and time display, advanced in the browser
+        playbackProgress = new PlaybackProgress();
+        playbackProgress.setWidthFull();
 
         // Control buttons
         previousButton = new Button(VaadinIcon.STEP_BACKWARD.create());
@@ -75,6 +79,7 @@ public class PlayerControlsComponent extends VerticalLayout {
 
         playPauseButton = new Button(VaadinIcon.PLAY.create());
         playPauseButton.addThemeVariants(ButtonVariant.LUMO_ICON, ButtonVariant.LUMO_PRIMARY);
+        playPauseButton.setId("play-pause");
 
         stopButton = new Button(VaadinIcon.STOP.create());
         stopButton.addThemeVariants(ButtonVariant.LUMO_ICON);
@@ -100,9 +105,14 @@ public class PlayerControlsComponent extends VerticalLayout {
         infoLayout.setPadding(false);
         infoLayout.setSpacing(false);
         infoLayout.setAlignItems(FlexComponent.Alignment.CENTER);
-        infoLayout.add(songInfoLabel, progressBar, timeLabel);
+        infoLayout.add(songInfoLabel, playbackProgress);
         infoLayout.setWidthFull();
 
+        HorizontalLayout nowPlayingLayout = new HorizontalLayout(coverImage, infoLayout);
+        nowPlayingLayout.setAlignItems(FlexComponent.Alignment.CENTER);
+        nowPlayingLayout.setWidthFull();
+        nowPlayingLayout.setFlexGrow(1, infoLayout);
+
         // Control buttons
         HorizontalLayout controlsLayout = new HorizontalLayout();
         controlsLayout.setAlignItems(FlexComponent.Alignment.CENTER);
@@ -122,7 +132,7 @@ public class PlayerControlsComponent extends VerticalLayout {
         completeControls.setFlexGrow(1, controlsLayout);
         completeControls.setJustifyContentMode(FlexComponent.JustifyContentMode.BETWEEN);
 
-        add(infoLayout, completeControls);
+        add(nowPlayingLayout, completeControls);
         setWidthFull();
     }
 
@@ -140,125 +150,92 @@ public class PlayerControlsComponent extends VerticalLayout {
     }
 
     private void togglePlayPause() {
-        try {
-            Player.Status status = mpdService.getPlayerStatus();
-            if (status == Player.Status.STATUS_PLAYING) {
-                mpdService.pause();
-            } else {
-                mpdService.play();
-            }
-            updateUI();
-        } catch (Exception e) {
-            // Handle error
+        if (statusHub.getPlayer().isPlaying()) {
+            AsyncUi.run(this, mpdService.pause());
+        } else {
+            AsyncUi.run(this, mpdService.play());
         }
     }
 
     private void stop() {
-        try {
-            mpdService.stop();
-            updateUI();
-        } catch (Exception e) {
-            // Handle error
-        }
+        AsyncUi.run(this, mpdService.stop());
     }
 
     private void previous() {
-        try {
-            mpdService.previous();
-            updateUI();
-        } catch (Exception e) {
-            // Handle error
-        }
+        AsyncUi.run(this, mpdService.previous());
     }
 
     private void next() {
-        try {
-            mpdService.next();
-            updateUI();
-        } catch (Exception e) {
-            // Handle error
-        }
+        AsyncUi.run(this, mpdService.next());
     }
 
     private void setVolume(int volume) {
-        try {
-            mpdService.setVolume(volume);
-        } catch (Exception e) {
-            // Handle error
-        }
+        // Dragging fires many changes, only the latest is sent
+        mpdService.requestVolume(volume);
     }
 
-    private void updateUI() {
-        try {
-            // Update play/pause button
-            Player.Status status = mpdService.getPlayerStatus();
-            if (status == Player.Status.STATUS_PLAYING) {
-                playPauseButton.setIcon(VaadinIcon.PAUSE.create());
-            } else {
-                playPauseButton.setIcon(VaadinIcon.PLAY.create());
-            }
-
-            // Update song info
-            Optional<MPDPlaylistSong> currentSong = mpdService.getCurrentSong();
-            if (currentSong.isPresent()) {
-                MPDSong song = currentSong.get();
-                String artist = song.getArtistName() != null ? song.getArtistName() : "Unknown Artist";
-                String title = song.getTitle() != null ? song.getTitle() : song.getName();
-                songInfoLabel.setText(artist + " - " + title);
-            } else {
-                songInfoLabel.setText("No song playing");
-            }
-
-            // Update progress
-            long elapsed = mpdService.getElapsedTime();
-            long total = mpdService.getTotalTime();
+    private void render(PlayerSnapshot snapshot) {
+        renderPlayerState(snapshot);
+        renderProgress(snapshot);
+    }
 
-            if (total > 0) {
-                double progress = (double) elapsed / total * 100;
-                progressBar.setValue(progress);
+    private void renderPlayerState(PlayerSnapshot snapshot) {
+        // Update play/pause button
+        if (snapshot.isPlaying()) {
+            playPauseButton.setIcon(VaadinIcon.PAUSE.create());
+        } else {
+            playPauseButton.setIcon(VaadinIcon.PLAY.create());
+        }
 
-                String elapsedStr = formatTime(elapsed);
-                String totalStr = formatTime(total);
-                timeLabel.setText(elapsedStr + " / " + totalStr);
-            } else {
-                progressBar.setValue(0);
-                timeLabel.setText("00:00 / 00:00");
-            }
+        // Update song info
+        Optional<MPDSong> currentSong = snapshot.getCurrentSong();
+        if (currentSong.isPresent()) {
+            MPDSong song = currentSong.get();
+            String artist = song.getArtistName() != null ? song.getArtistName() : "Unknown Artist";
+            String title = song.getTitle() != null ? song.getTitle() : song.getName();
+            songInfoLabel.setText(artist + " - " + title);
+            renderCover(song.getFile());
+        } else {
+            songInfoLabel.setText("No song playing");
+            renderCover(null);
+        }
 
-            // Update volume
-            int volume = mpdService.getVolume();
-            volumeSlider.setValue(volume);
+        // Update volume
+        volumeSlider.setValue(snapshot.volume());
+    }
 
-        } catch (Exception e) {
-            // Handle error
+    private void renderCover(String file) {
+        // The browser fetches and caches the cover; the source only changes with the song
+        String source = file != null ? AlbumArtUrls.song(file, ThumbnailSize.LARGE) : null;
+        if (source == null) {
+            coverImage.setVisible(false);
+            coverImage.getElement().removeAttribute("src");
+        } else if (!source.equals(coverImage.getSrc())) {
+            coverImage.setSrc(source);
+            coverImage.setVisible(true);
         }
     }
 
-    private String formatTime(long seconds) {
-        long mins = seconds / 60;
-        long secs = seconds % 60;
-        return String.format("%02d:%02d", mins, secs);
+    private void renderProgress(PlayerSnapshot snapshot) {
+        // Sent once per change; the browser animates from here
+        playbackProgress.setPlayback(
+                snapshot.elapsedMillisAt(System.nanoTime()), snapshot.totalMillis(), snapshot.isPlaying());
     }
 
     @Override
     protected void onAttach(AttachEvent attachEvent) {
         super.onAttach(attachEvent);
-
-        // Start periodic UI updates
-        UI ui = attachEvent.getUI();
-        pollingRegistration = scheduler.scheduleAtFixedRate(() -> {
-            ui.access(this::updateUI);
-        }, 0, 1, TimeUnit.SECONDS);
+        statusRegistration = statusHub.subscribePlayer(attachEvent.getUI(), this::render);
     }
 
     @Override
     protected void onDetach(DetachEvent detachEvent) {
         super.onDetach(detachEvent);
 
-        if (pollingRegistration != null) {
-            pollingRegistration.cancel(true);
+        if (statusRegistration != null) {
+            statusRegistration.remove();
+            statusRegistration = null;
         }
-        scheduler.shutdown();
     }
 
-}
\ No newline at end of file
+}
@@ -1,29 +1,54 @@
 package uk.humbkr.jmpc.ui;
 
 import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.dnd.GridDropEvent;
+import com.vaadin.flow.component.grid.dnd.GridDropLocation;
+import com.vaadin.flow.component.grid.dnd.GridDropMode;
 import com.vaadin.flow.component.html.H3;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
-import com.vaadin.flow.data.renderer.ComponentRenderer;
-import org.bff.javampd.song.MPDSong;
-import uk.humbkr.jmpc.service.MpdService;
-
-import java.util.Collection;
+import com.vaadin.flow.data.provider.CallbackDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.renderer.LitRenderer;
+import com.vaadin.flow.shared.Registration;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+import uk.humbkr.jmpc.service.MpdAsyncService;
+import uk.humbkr.jmpc.service.MpdStatusHub;
+import uk.humbkr.jmpc.service.QueueSnapshot;
+import uk.humbkr.jmpc.service.QueueUpdate;
+
+import java.util.List;
+import java.util.stream.Stream;
 
 public class PlaylistComponent extends VerticalLayout {
 
-    private final MpdService mpdService;
+    private final MpdAsyncService mpdService;
+
+    private final MpdStatusHub statusHub;
 
-    private Grid<MPDSong> playlistGrid;
+    private Grid<MpdQueueEntry> playlistGrid;
 
     private Button clearPlaylistButton;
 
-    public PlaylistComponent(MpdService mpdService) {
+    private Button removeSelectedButton;
+
+    private CallbackDataProvider<MpdQueueEntry, Void> queueProvider;
+
+    private QueueSnapshot queue = QueueSnapshot.EMPTY;
+
+    private Registration queueRegistration;
+
+    // Rows being dragged within the grid, null when no drag is in progress
+    private List<MpdQueueEntry> draggedEntries;
+
+    public PlaylistComponent(MpdAsyncService mpdService, MpdStatusHub statusHub) {
         this.mpdService = mpdService;
+        this.statusHub = statusHub;
 
         createComponents();
         setupLayout();
@@ -39,40 +64,61 @@ public class PlaylistComponent extends VerticalLayout {
         clearPlaylistButton.addThemeVariants(ButtonVariant.LUMO_ERROR);
         clearPlaylistButton.addClickListener(e -> clearPlaylist());
 
-        // Playlist grid
-        playlistGrid = new Grid<>(MPDSong.class, false);
+        // Remove selected button
+        removeSelectedButton = new Button("Remove selected", VaadinIcon.MINUS.create());
+        removeSelectedButton.addThemeVariants(ButtonVariant.LUMO_ERROR, ButtonVariant.LUMO_SMALL);
+        removeSelectedButton.setEnabled(false);
+        removeSelectedButton.addClickListener(e -> removeSelected());
+
+        // Playlist grid, paged from the shared in-memory queue; rows are keyed by MPD song id
+        playlistGrid = new Grid<>(MpdQueueEntry.class, false);
         playlistGrid.setHeightFull();
+        queueProvider = new CallbackDataProvider<>(this::fetchEntries, query -> queue.length(), MpdQueueEntry::id);
+        playlistGrid.setItems(queueProvider);
+        playlistGrid.setSelectionMode(Grid.SelectionMode.MULTI);
+        playlistGrid.addSelectionListener(e -> removeSelectedButton.setEnabled(!e.getAllSelectedItems().isEmpty()));
 
         // Configure columns
-        playlistGrid.addColumn(song -> {
-            String songTitle = song.getTitle();
-            return songTitle != null ? songTitle : song.getName();
+        playlistGrid.addColumn(entry -> {
+            String songTitle = entry.song().getTitle();
+            return songTitle != null ? songTitle : entry.song().getName();
         }).setHeader("Title").setFlexGrow(2);
 
-        playlistGrid.addColumn(MPDSong::getArtistName)
+        playlistGrid.addColumn(entry -> entry.song().getArtistName())
                 .setHeader("Artist")
                 .setFlexGrow(1);
 
-        playlistGrid.addColumn(MPDSong::getAlbumName)
+        playlistGrid.addColumn(entry -> entry.song().getAlbumName())
                 .setHeader("Album")
                 .setFlexGrow(1);
 
-        playlistGrid.addColumn(song -> formatDuration(song.getLength()))
+        playlistGrid.addColumn(entry -> DurationFormat.format(entry.song().getLength()))
                 .setHeader("Duration")
                 .setFlexGrow(0)
                 .setWidth("80px");
 
-        // Action column with remove button
-        playlistGrid.addColumn(new ComponentRenderer<>(song -> {
-            Button removeButton = new Button(VaadinIcon.MINUS.create());
-            removeButton.addThemeVariants(ButtonVariant.LUMO_ICON, ButtonVariant.LUMO_ERROR, ButtonVariant.LUMO_SMALL);
-            removeButton.addClickListener(e -> removeSong(song));
-            removeButton.setTooltipText("Remove from playlist");
-            return removeButton;
-        })).setHeader("Actions").setFlexGrow(0).setWidth("80px");
+        // Action column with remove button, a template the browser stamps per row; only clicks reach the server
+        playlistGrid.addColumn(LitRenderer.<MpdQueueEntry>of(
+                        "<vaadin-button theme=\"icon error small\" title=\"Remove from playlist\""
+                                + " aria-label=\"Remove from playlist\" @click=${remove}>"
+                                + "<vaadin-icon icon=\"vaadin:minus\"></vaadin-icon></vaadin-button>")
+                        .withFunction("remove", this::removeSong))
+                .setHeader("Actions").setFlexGrow(0).setWidth("80px");
 
         // Double-click to play
         playlistGrid.addItemDoubleClickListener(e -> playSong(e.getItem()));
+
+        // Drag and drop to reorder
+        playlistGrid.setRowsDraggable(true);
+        playlistGrid.addDragStartListener(e -> {
+            draggedEntries = e.getDraggedItems();
+            playlistGrid.setDropMode(GridDropMode.BETWEEN);
+        });
+        playlistGrid.addDropListener(this::moveDraggedEntries);
+        playlistGrid.addDragEndListener(e -> {
+            draggedEntries = null;
+            playlistGrid.setDropMode(null);
+        });
     }
 
     private void setupLayout() {
@@ -87,57 +133,68 @@ public class PlaylistComponent extends VerticalLayout {
         headerLayout.setAlignItems(Alignment.CENTER);
 
         H3 title = new H3("Current Playlist");
-        headerLayout.add(title, clearPlaylistButton);
+        HorizontalLayout actionsLayout = new HorizontalLayout(removeSelectedButton, clearPlaylistButton);
+        actionsLayout.setAlignItems(Alignment.CENTER);
+        headerLayout.add(title, actionsLayout);
 
         add(headerLayout, playlistGrid);
         setFlexGrow(1, playlistGrid);
     }
 
     private void loadPlaylist() {
-        try {
-            if (mpdService.isConnected()) {
-                Collection<MPDSong> songs = mpdService.getPlaylist();
-                playlistGrid.setItems(songs);
-            }
-        } catch (Exception e) {
-            // Handle error - could show notification
-        }
+        showPlaylist(QueueUpdate.full(statusHub.getQueue()));
     }
 
-    private void clearPlaylist() {
-        try {
-            mpdService.clearPlaylist();
-            loadPlaylist();
-        } catch (Exception e) {
-            // Handle error
+    private void showPlaylist(QueueUpdate update) {
+        QueueSnapshot previous = queue;
+        queue = update.snapshot();
+
+        // Rows can be refreshed in place only while every position keeps its song
+        boolean inPlace = !update.full()
+                && previous.length() == queue.length()
+                && update.changed().stream().allMatch(entry -> previous.entry(entry.position()).id() == entry.id());
+        if (inPlace) {
+            update.changed().forEach(queueProvider::refreshItem);
+        } else {
+            queueProvider.refreshAll();
         }
     }
 
-    private void removeSong(MPDSong song) {
-        try {
-            mpdService.removeFromPlaylist(song);
-            loadPlaylist();
-        } catch (Exception e) {
-            // Handle error
+    private Stream<MpdQueueEntry> fetchEntries(Query<MpdQueueEntry, Void> query) {
+        QueueSnapshot current = queue;
+        int offset = query.getOffset();
+        int end = Math.min(current.length(), offset + query.getLimit());
+        if (offset >= end) {
+            return Stream.empty();
         }
+        return current.entries().subList(offset, end).stream();
     }
 
-    private void playSong(MPDSong song) {
-        try {
-            // Note: This would require additional MPD API to play specific song by position
-            // For now, we'll just play the current selection
-            mpdService.play();
-        } catch (Exception e) {
-            // Handle error
-        }
+    private void clearPlaylist() {
+        AsyncUi.run(this, mpdService.clearPlaylist());
     }
 
-    private String formatDuration(int seconds) {
-        if (seconds <= 0) return "--:--";
+    private void removeSong(MpdQueueEntry entry) {
+        AsyncUi.run(this, mpdService.removeFromPlaylist(entry.id()));
+    }
+
+    private void removeSelected() {
+        // Consecutive rows go in one range delete
+        AsyncUi.run(this, mpdService.removeAllFromPlaylist(List.copyOf(playlistGrid.getSelectedItems())));
+        playlistGrid.deselectAll();
+    }
+
+    private void playSong(MpdQueueEntry entry) {
+        AsyncUi.run(this, mpdService.playId(entry.id()));
+    }
+
+    private void moveDraggedEntries(GridDropEvent<MpdQueueEntry> event) {
+        if (draggedEntries == null || draggedEntries.isEmpty()) return;
 
-        int mins = seconds / 60;
-        int secs = seconds % 60;
-        return String.format("%d:%02d", mins, secs);
+        int to = event.getDropTargetItem()
+                .map(target -> event.getDropLocation() == GridDropLocation.BELOW ? target.position() + 1 : target.position())
+                .orElse(queue.length());
+        AsyncUi.run(this, mpdService.moveInPlaylist(draggedEntries, to));
     }
 
     public void refreshPlaylist() {
@@ -147,7 +204,17 @@ public class PlaylistComponent extends VerticalLayout {
     @Override
     protected void onAttach(AttachEvent attachEvent) {
         super.onAttach(attachEvent);
-        loadPlaylist();
+        queueRegistration = statusHub.subscribeQueue(attachEvent.getUI(), this::showPlaylist);
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+
+        if (queueRegistration != null) {
+            queueRegistration.remove();
+            queueRegistration = null;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package uk.humbkr.jmpc.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import uk.humbkr.jmpc.albumart.AlbumArtCache;
+import uk.humbkr.jmpc.albumart.AlbumArtUrls;
+import uk.humbkr.jmpc.albumart.ThumbnailSize;
+import uk.humbkr.jmpc.service.AlbumArtService;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves cover thumbnails to the browser.
+ * <p>
+ * Thumbnails addressed by content hash never change and are cached by browsers for good. Covers
+ * addressed by song are revalidated daily with the hash as ETag, so a browser only downloads a
+ * cover again when the album's art actually changed.
+ */
+@Slf4j
+@RestController
+@RequestMapping(AlbumArtUrls.BASE_PATH)
+public class AlbumArtController {
+
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(15);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private static final CacheControl REVALIDATED = CacheControl.maxAge(Duration.ofDays(1)).cachePublic();
+
+    private static final CacheControl MISSING = CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
+    private final AlbumArtService albumArtService;
+
+    public AlbumArtController(AlbumArtService albumArtService) {
+        this.albumArtService = albumArtService;
+    }
+
+    @GetMapping("/{hash}/{size}")
+    public ResponseEntity<byte[]> thumbnail(@PathVariable String hash, @PathVariable String size, WebRequest request) {
+        Optional<ThumbnailSize> thumbnailSize = ThumbnailSize.fromPathName(size);
+        if (thumbnailSize.isEmpty() || !AlbumArtCache.isHash(hash)) {
+            return ResponseEntity.notFound().build();
+        }
+        return serve(hash, thumbnailSize.get(), IMMUTABLE, request);
+    }
+
+    @GetMapping("/song/{size}")
+    public ResponseEntity<byte[]> songCover(@RequestParam String file, @PathVariable String size, WebRequest request) {
+        Optional<ThumbnailSize> thumbnailSize = ThumbnailSize.fromPathName(size);
+        if (thumbnailSize.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Optional<String> hash;
+        try {
+            hash = albumArtService.getCover(file).get(FETCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ExecutionException e) {
+            log.debug("Failed to fetch cover for {}", file, e.getCause());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        if (hash.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).cacheControl(MISSING).build();
+        }
+        return serve(hash.get(), thumbnailSize.get(), REVALIDATED, request);
+    }
+
+    private ResponseEntity<byte[]> serve(String hash, ThumbnailSize size, CacheControl cacheControl, WebRequest request) {
+        String eTag = "\"" + hash + "-" + size.getPathName() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(cacheControl).build();
+        }
+
+        return albumArtService.getThumbnail(hash, size)
+                .map(thumbnail -> ResponseEntity.ok()
+                        .eTag(eTag)
+                        .cacheControl(cacheControl)
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .body(thumbnail))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+}
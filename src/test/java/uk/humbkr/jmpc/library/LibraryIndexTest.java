@@ -0,0 +1,60 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibraryIndexTest {
+
+    private final LibraryIndex index = LibraryIndex.build(List.of(
+            song("Beatles/Help/01 - Help.flac", "Help!", "The Beatles", "Help!"),
+            song("Beatles/Help/02 - Yesterday.flac", "Yesterday", "The Beatles", "Help!"),
+            song("Beatles/Revolver/01 - Yellow.flac", "Yellow Submarine", "The Beatles", "Revolver"),
+            song("Beach Boys/Today/01 - Rhonda.flac", "Help Me, Rhonda", "The Beach Boys", "Today!"),
+            song("Misc/Café.flac", "Café del Mar", "Energy 52", "Café del Mar")));
+
+    @Test
+    void searchMatchesSubstringsIgnoringCaseAndAccents() {
+        assertThat(titles(index.search("BEATLES"))).containsExactlyInAnyOrder("Help!", "Yesterday", "Yellow Submarine");
+        assertThat(titles(index.search("cafe"))).containsExactly("Café del Mar");
+        assertThat(index.search(" ")).hasSize(index.size());
+    }
+
+    @Test
+    void rankToleratesTyposAndUnfinishedWords() {
+        assertThat(titles(index.rank("yesterdy", 3))).first().isEqualTo("Yesterday");
+        assertThat(titles(index.rank("yell", 3))).first().isEqualTo("Yellow Submarine");
+        assertThat(index.rank("", 3)).isEmpty();
+    }
+
+    @Test
+    void rankPrefersTitleHitsAndShorterTitles() {
+        // Both titles hold the word exactly, "Yesterday" only matches through its album
+        assertThat(titles(index.rank("help", 2))).containsExactly("Help!", "Help Me, Rhonda");
+    }
+
+    @Test
+    void searchRankedKeepsEverySubstringMatchAfterTheRankedOnes() {
+        List<String> titles = titles(index.searchRanked("help", 1));
+
+        assertThat(titles.getFirst()).isEqualTo("Help!");
+        assertThat(titles).containsExactlyInAnyOrder("Help!", "Yesterday", "Help Me, Rhonda");
+    }
+
+    private List<String> titles(int[] ordinals) {
+        List<String> titles = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            titles.add(index.getStore().title(ordinal));
+        }
+        return titles;
+    }
+
+    private static MPDSong song(String file, String title, String artist, String album) {
+        return MPDSong.builder().file(file).title(title).artistName(artist).albumName(album).build();
+    }
+
+}
@@ -0,0 +1,71 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibrarySnapshotFileTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void readReturnsTheSnapshotWritten() throws Exception {
+        List<MPDSong> songs = new ArrayList<>(SyntheticLibrary.generate(200));
+        songs.add(MPDSong.builder()
+                .file("Various/Mix/07 - Track.flac")
+                .name("A stream name")
+                .title("Track")
+                .track("7/12")
+                .discNumber("2")
+                .length(321)
+                .build());
+        LibrarySnapshot snapshot = LibrarySnapshot.of(42, songs,
+                Map.of("Various", "2024-01-01T00:00:00Z", "Various/Mix", "2024-01-02T00:00:00Z"));
+        Path file = directory.resolve("library.bin");
+
+        LibrarySnapshotFile.write(file, snapshot);
+        LibrarySnapshot read = LibrarySnapshotFile.read(file).orElseThrow();
+
+        assertThat(read.version()).isEqualTo(42);
+        assertThat(read.loadedAt()).isEqualTo(snapshot.loadedAt().truncatedTo(ChronoUnit.MILLIS));
+        assertThat(read.directories()).isEqualTo(snapshot.directories());
+        SongStore expected = snapshot.store();
+        SongStore actual = read.store();
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int ordinal = 0; ordinal < expected.size(); ordinal++) {
+            assertThat(actual.file(ordinal)).isEqualTo(expected.file(ordinal));
+            assertThat(actual.name(ordinal)).isEqualTo(expected.name(ordinal));
+            assertThat(actual.title(ordinal)).isEqualTo(expected.title(ordinal));
+            assertThat(actual.artist(ordinal)).isEqualTo(expected.artist(ordinal));
+            assertThat(actual.album(ordinal)).isEqualTo(expected.album(ordinal));
+            assertThat(actual.genre(ordinal)).isEqualTo(expected.genre(ordinal));
+            assertThat(actual.length(ordinal)).isEqualTo(expected.length(ordinal));
+            assertThat(actual.track(ordinal)).isEqualTo(expected.track(ordinal));
+            assertThat(actual.disc(ordinal)).isEqualTo(expected.disc(ordinal));
+        }
+        int mix = actual.ordinalOf("Various/Mix/07 - Track.flac");
+        assertThat(actual.track(mix)).isEqualTo(7);
+        assertThat(actual.disc(mix)).isEqualTo(2);
+        assertThat(actual.name(mix)).isEqualTo("A stream name");
+    }
+
+    @Test
+    void readIgnoresMissingAndForeignFiles() throws Exception {
+        Path foreign = Files.write(directory.resolve("foreign.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThat(LibrarySnapshotFile.read(directory.resolve("missing.bin"))).isEmpty();
+        assertThat(LibrarySnapshotFile.read(foreign)).isEmpty();
+    }
+
+}
@@ -0,0 +1,61 @@
+package uk.humbkr.jmpc.library;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SortOrdersTest {
+
+    private final SongStore store = SongStore.of(List.of(
+            song("1.flac", "Cream"),
+            song("2.flac", null),
+            song("3.flac", "The Beatles"),
+            song("4.flac", "abba"),
+            song("5.flac", null)));
+
+    private final SortOrders orders = SortOrders.build(store, Locale.ENGLISH);
+
+    @Test
+    void ascendingCollatesIgnoringCaseAndArticleWithUntaggedLast() {
+        assertThat(artistsInOrder(false)).containsExactly("abba", "The Beatles", "Cream", null, null);
+    }
+
+    @Test
+    void descendingReversesTheTaggedSongsAndKeepsUntaggedLast() {
+        assertThat(artistsInOrder(true)).containsExactly("Cream", "The Beatles", "abba", null, null);
+    }
+
+    @Test
+    void sortingASubsetKeepsUntaggedLastInBothDirections() {
+        int[] subset = {store.ordinalOf("2.flac"), store.ordinalOf("3.flac"), store.ordinalOf("1.flac")};
+
+        assertThat(artists(orders.sort(subset, SortKey.ARTIST, false))).containsExactly("The Beatles", "Cream", null);
+        assertThat(artists(orders.sort(subset, SortKey.ARTIST, true))).containsExactly("Cream", "The Beatles", null);
+    }
+
+    private List<String> artistsInOrder(boolean descending) {
+        int[] ordinals = new int[orders.size()];
+        for (int position = 0; position < ordinals.length; position++) {
+            ordinals[position] = orders.ordinalAt(SortKey.ARTIST, descending, position);
+        }
+        return artists(ordinals);
+    }
+
+    private List<String> artists(int[] ordinals) {
+        List<String> artists = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            artists.add(store.artist(ordinal));
+        }
+        return artists;
+    }
+
+    private static MPDSong song(String file, String artist) {
+        return MPDSong.builder().file(file).name(file).title(file).artistName(artist).build();
+    }
+
+}
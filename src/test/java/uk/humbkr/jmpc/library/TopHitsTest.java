@@ -0,0 +1,44 @@
+package uk.humbkr.jmpc.library;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopHitsTest {
+
+    @Test
+    void keepsTheBestScoresWithTiesInLibraryOrder() {
+        TopHits hits = new TopHits(3);
+        hits.offer(0.5f, 10);
+        hits.offer(0.9f, 3);
+        hits.offer(0.1f, 7);
+        hits.offer(0.9f, 1);
+        hits.offer(0.7f, 2);
+
+        assertThat(hits.drainBestFirst()).containsExactly(1, 3, 2);
+    }
+
+    @Test
+    void drainingEmptiesTheHeap() {
+        TopHits hits = new TopHits(2);
+        hits.offer(1.0f, 0);
+
+        assertThat(hits.drainBestFirst()).containsExactly(0);
+        assertThat(hits.drainBestFirst()).isEmpty();
+    }
+
+    @Test
+    void addAllMergesSegmentsWithinTheCapacity() {
+        TopHits left = new TopHits(2);
+        left.offer(0.2f, 0);
+        left.offer(0.8f, 1);
+        TopHits right = new TopHits(2);
+        right.offer(0.6f, 5);
+        right.offer(0.9f, 6);
+
+        left.addAll(right);
+
+        assertThat(left.drainBestFirst()).containsExactly(6, 1);
+    }
+
+}
@@ -0,0 +1,94 @@
+package uk.humbkr.jmpc.mpd;
+
+import org.bff.javampd.player.Player;
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class MpdResponsesTest {
+
+    @Test
+    void parseSongsSkipsDirectoriesAndPlaylists() {
+        List<MPDSong> songs = MpdResponses.parseSongs(List.of(
+                "directory: Artist",
+                "Last-Modified: 2024-01-01T00:00:00Z",
+                "file: Artist/01 - One.flac",
+                "Last-Modified: 2024-01-01T00:00:00Z",
+                "Title: One",
+                "Artist: Artist",
+                "Artist: Featured",
+                "Track: 1/10",
+                "Time: 200",
+                "duration: 200.512",
+                "playlist: Artist/list.m3u",
+                "file: Artist/02 - Two.flac",
+                "Name: Radio Two"));
+
+        assertThat(songs).hasSize(2);
+        MPDSong one = songs.get(0);
+        assertThat(one.getFile()).isEqualTo("Artist/01 - One.flac");
+        assertThat(one.getTitle()).isEqualTo("One");
+        assertThat(one.getArtistName()).isEqualTo("Artist");
+        assertThat(one.getTrack()).isEqualTo("1/10");
+        assertThat(one.getLength()).isEqualTo(200);
+        assertThat(one.getName()).isEqualTo("01 - One.flac");
+        assertThat(songs.get(1).getName()).isEqualTo("Radio Two");
+        assertThat(songs.get(1).getTitle()).isNull();
+    }
+
+    @Test
+    void parseQueueKeepsPositionsAndIds() {
+        List<MpdQueueEntry> entries = MpdResponses.parseQueue(List.of(
+                "file: a.flac", "Pos: 0", "Id: 17",
+                "file: b.flac", "Title: B", "Pos: 1", "Id: 4"));
+
+        assertThat(entries).extracting(MpdQueueEntry::position).containsExactly(0, 1);
+        assertThat(entries).extracting(MpdQueueEntry::id).containsExactly(17, 4);
+        assertThat(entries.get(1).song().getTitle()).isEqualTo("B");
+    }
+
+    @Test
+    void parsePositionIdsPairsEachPositionWithTheFollowingId() {
+        Map<Integer, Integer> ids = MpdResponses.parsePositionIds(List.of(
+                "cpos: 3", "Id: 12",
+                "cpos: 4", "Id: 9"));
+
+        assertThat(ids).containsExactly(entry(3, 12), entry(4, 9));
+    }
+
+    @Test
+    void parseDirectoriesReadsTheStampFollowingEachDirectory() {
+        Map<String, String> directories = MpdResponses.parseDirectories(List.of(
+                "directory: A",
+                "Last-Modified: 2024-01-01T00:00:00Z",
+                "directory: A/B",
+                "file: A/B/song.flac",
+                "Last-Modified: 2024-02-02T00:00:00Z",
+                "directory: C",
+                "Last-Modified: 2024-03-03T00:00:00Z"));
+
+        // A/B has no stamp of its own, the one after it belongs to the song
+        assertThat(directories).containsOnly(
+                entry("A", "2024-01-01T00:00:00Z"),
+                entry("A/B", ""),
+                entry("C", "2024-03-03T00:00:00Z"));
+    }
+
+    @Test
+    void parsesStatusValues() {
+        Map<String, String> status = MpdResponses.toMap(List.of("state: pause", "elapsed: 12.3456", "bogus", "state: play"));
+
+        assertThat(MpdResponses.parseState(status.get("state"))).isEqualTo(Player.Status.STATUS_PAUSED);
+        assertThat(MpdResponses.parseState(null)).isEqualTo(Player.Status.STATUS_STOPPED);
+        assertThat(MpdResponses.parseMillis(status.get("elapsed"), 0)).isEqualTo(12346);
+        assertThat(MpdResponses.parseSeconds(status.get("elapsed"), 0)).isEqualTo(12);
+        assertThat(MpdResponses.parseInt(" 7 ", 0)).isEqualTo(7);
+        assertThat(MpdResponses.parseInt("x", -1)).isEqualTo(-1);
+    }
+
+}
@@ -0,0 +1,50 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.mpd.MpdConnectionObserver;
+
+/**
+ * Wires an {@link MpdService} to a {@link FakeMpdServer} the way Spring would, with the defaults of
+ * its {@code @Value} properties.
+ */
+final class FakeMpd {
+
+    private FakeMpd() {
+    }
+
+    static MpdService connect(FakeMpdServer server) {
+        return connect(server, 1000);
+    }
+
+    static MpdService connect(FakeMpdServer server, int batchMaxCommands) {
+        MpdService mpdService = new MpdService(MpdConnectionObserver.NONE);
+        ReflectionTestUtils.setField(mpdService, "mpdHost", server.getHost());
+        ReflectionTestUtils.setField(mpdService, "mpdPort", server.getPort());
+        ReflectionTestUtils.setField(mpdService, "mpdTimeout", 5000);
+        ReflectionTestUtils.setField(mpdService, "poolMaxSize", 4);
+        ReflectionTestUtils.setField(mpdService, "poolMaxWait", 5000L);
+        ReflectionTestUtils.setField(mpdService, "poolIdleTimeout", 30000L);
+        ReflectionTestUtils.setField(mpdService, "poolValidationInterval", 10000L);
+        ReflectionTestUtils.setField(mpdService, "batchMaxCommands", batchMaxCommands);
+        mpdService.init();
+        return mpdService;
+    }
+
+    /**
+     * The song with the same file and other tags, but a new title.
+     */
+    static MPDSong retitled(MPDSong song, String title) {
+        return MPDSong.builder()
+                .file(song.getFile())
+                .name(song.getName())
+                .title(title)
+                .artistName(song.getArtistName())
+                .albumName(song.getAlbumName())
+                .genre(song.getGenre())
+                .length(song.getLength())
+                .build();
+    }
+
+}
@@ -0,0 +1,89 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibrarySearchServiceTest {
+
+    private final List<MPDSong> library = SyntheticLibrary.generate(1000);
+
+    private FakeMpdServer server;
+
+    private MpdService mpdService;
+
+    private LibrarySearchService searchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeMpdServer.start(0, library, Duration.ZERO, 0);
+        mpdService = FakeMpd.connect(server);
+        searchService = new LibrarySearchService(mpdService, new MpdIdleListener(mpdService));
+        ReflectionTestUtils.setField(searchService, "cacheSize", 512);
+        searchService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchService.stop();
+        mpdService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void lowercaseQueryCountsAndFetchesEveryMatch() throws Exception {
+        String genre = library.get(0).getGenre().toLowerCase(Locale.ROOT);
+        List<String> expected = library.stream()
+                .filter(song -> song.getGenre().toLowerCase(Locale.ROOT).contains(genre))
+                .map(MPDSong::getFile)
+                .toList();
+        MpdFilter filter = LibrarySearchService.compile("genre:" + genre);
+
+        SearchPage page = searchService.fetch(filter, 0, expected.size() + 10);
+
+        // More than a page, so the count of the first page has to cover all of them
+        assertThat(expected.size()).isGreaterThan(LibrarySearchService.PAGE_SIZE);
+        assertThat(searchService.count(filter)).isEqualTo(expected.size());
+        assertThat(page.total()).isEqualTo(expected.size());
+        assertThat(page.songs()).extracting(MPDSong::getFile).isEqualTo(expected);
+    }
+
+    @Test
+    void fetchAssemblesWindowsAcrossPages() throws Exception {
+        SearchPage page = searchService.fetch(MpdFilter.ALL, 90, 20);
+
+        assertThat(page.offset()).isEqualTo(90);
+        assertThat(page.total()).isEqualTo(library.size());
+        assertThat(page.songs()).extracting(MPDSong::getFile)
+                .isEqualTo(library.subList(90, 110).stream().map(MPDSong::getFile).toList());
+    }
+
+    @Test
+    void repeatedFetchIsServedFromTheCache() throws Exception {
+        MpdFilter filter = LibrarySearchService.compile("ROCK");
+        assertThat(searchService.cached(filter, 0, 50)).isEmpty();
+
+        SearchPage first = searchService.fetch(filter, 0, 50);
+        long commands = server.getCommandCount();
+        SearchPage second = searchService.fetch(filter, 10, 20);
+
+        assertThat(server.getCommandCount()).isEqualTo(commands);
+        assertThat(searchService.getCacheMisses()).isEqualTo(1);
+        assertThat(searchService.getCacheHits()).isEqualTo(1);
+        assertThat(second.songs()).isEqualTo(first.songs().subList(10, 30));
+        assertThat(searchService.cached(filter, 0, 50)).hasValueSatisfying(
+                cached -> assertThat(cached.songs()).isEqualTo(first.songs()));
+    }
+
+}
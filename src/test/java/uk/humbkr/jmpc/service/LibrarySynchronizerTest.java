@@ -0,0 +1,74 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.library.LibrarySnapshot;
+import uk.humbkr.jmpc.library.LibraryUpdate;
+import uk.humbkr.jmpc.library.SongStore;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibrarySynchronizerTest {
+
+    private final List<MPDSong> library = SyntheticLibrary.generate(300);
+
+    private FakeMpdServer server;
+
+    private MpdService mpdService;
+
+    private LibrarySynchronizer synchronizer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeMpdServer.start(0, library, Duration.ZERO, 0);
+        mpdService = FakeMpd.connect(server);
+        synchronizer = new LibrarySynchronizer(mpdService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mpdService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void loadReadsEverySongAndDirectory() throws Exception {
+        long version = mpdService.getDatabaseVersion();
+
+        LibrarySnapshot snapshot = synchronizer.load(version).snapshot();
+
+        assertThat(snapshot.version()).isEqualTo(version);
+        assertThat(snapshot.store().songs()).extracting(MPDSong::getFile)
+                .containsExactlyInAnyOrderElementsOf(library.stream().map(MPDSong::getFile).toList());
+        assertThat(snapshot.directories()).containsKey(parentOf(library.get(0).getFile()));
+    }
+
+    @Test
+    void synchronizePicksUpSongsRetaggedInPlace() throws Exception {
+        LibrarySnapshot current = synchronizer.load(mpdService.getDatabaseVersion()).snapshot();
+        MPDSong song = library.get(123);
+
+        // Retagging leaves every directory stamp as it was, only the database version moves
+        server.updateSong(FakeMpd.retitled(song, "Retagged"));
+        long version = mpdService.getDatabaseVersion();
+        LibraryUpdate update = synchronizer.synchronize(current, version);
+
+        SongStore store = update.snapshot().store();
+        assertThat(version).isGreaterThan(current.version());
+        assertThat(update.snapshot().version()).isEqualTo(version);
+        assertThat(store.title(store.ordinalOf(song.getFile()))).isEqualTo("Retagged");
+        assertThat(store.size()).isEqualTo(library.size());
+    }
+
+    private static String parentOf(String file) {
+        return file.substring(0, file.lastIndexOf('/'));
+    }
+
+}
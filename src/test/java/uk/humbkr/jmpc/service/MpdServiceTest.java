@@ -0,0 +1,148 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.player.Player;
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.mpd.MpdCommandResult;
+import uk.humbkr.jmpc.mpd.MpdFilter;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MpdServiceTest {
+
+    private final List<MPDSong> library = SyntheticLibrary.generate(500);
+
+    private FakeMpdServer server;
+
+    private MpdService mpdService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeMpdServer.start(0, library, Duration.ZERO, 0);
+        // Small command lists, so listing a few directories spans several of them
+        mpdService = FakeMpd.connect(server, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mpdService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void searchPageCountsMatchesIgnoringCaseLikeTheSearch() throws Exception {
+        String artist = library.stream()
+                .map(MPDSong::getArtistName)
+                .filter(name -> name != null)
+                .findFirst()
+                .orElseThrow()
+                .toLowerCase(Locale.ROOT);
+        long expected = library.stream()
+                .filter(song -> song.getArtistName() != null
+                        && song.getArtistName().toLowerCase(Locale.ROOT).contains(artist))
+                .count();
+
+        SearchPage page = mpdService.search(MpdFilter.contains("artist", artist), 0, 10);
+
+        assertThat(expected).isPositive();
+        assertThat(page.total()).isEqualTo(expected);
+        assertThat(page.songs()).hasSize((int) Math.min(10, expected));
+        assertThat(mpdService.search(MpdFilter.contains("artist", artist))).hasSize((int) expected);
+    }
+
+    @Test
+    void searchPageIsTheWindowOfTheMatches() throws Exception {
+        SearchPage page = mpdService.search(MpdFilter.ALL, 90, 20);
+
+        assertThat(page.offset()).isEqualTo(90);
+        assertThat(page.total()).isEqualTo(library.size());
+        assertThat(files(page.songs())).isEqualTo(files(library.subList(90, 110)));
+    }
+
+    @Test
+    void listDirectoriesReturnsOneListingPerPathAcrossCommandLists() throws Exception {
+        Map<String, List<String>> filesByDirectory = library.stream()
+                .collect(Collectors.groupingBy(song -> parentOf(song.getFile()), LinkedHashMap::new,
+                        Collectors.mapping(MPDSong::getFile, Collectors.toList())));
+        List<String> directories = filesByDirectory.keySet().stream().limit(5).toList();
+
+        List<LibraryListing> listings = mpdService.listDirectories(directories);
+
+        assertThat(listings).hasSize(5);
+        for (int i = 0; i < directories.size(); i++) {
+            assertThat(files(listings.get(i).songs())).isEqualTo(filesByDirectory.get(directories.get(i)));
+        }
+    }
+
+    @Test
+    void playerSnapshotReflectsPlayback() throws Exception {
+        mpdService.addAllToPlaylist(library.subList(0, 3));
+        mpdService.play();
+
+        PlayerSnapshot snapshot = mpdService.getPlayerSnapshot();
+
+        assertThat(snapshot.status()).isEqualTo(Player.Status.STATUS_PLAYING);
+        assertThat(snapshot.currentSong().getFile()).isEqualTo(library.get(0).getFile());
+        assertThat(snapshot.totalMillis()).isEqualTo(library.get(0).getLength() * 1000L);
+    }
+
+    @Test
+    void moveInPlaylistPlacesEntriesInQueueOrderBeforeTheTarget() throws Exception {
+        List<Integer> ids = queueIds(6);
+
+        mpdService.moveInPlaylist(List.of(entry(4), entry(1)), 0);
+        assertThat(queueIds()).containsExactly(ids.get(1), ids.get(4), ids.get(0), ids.get(2), ids.get(3), ids.get(5));
+
+        mpdService.moveInPlaylist(List.of(entry(0), entry(3)), 5);
+        assertThat(queueIds()).containsExactly(ids.get(4), ids.get(0), ids.get(3), ids.get(1), ids.get(2), ids.get(5));
+
+        mpdService.moveInPlaylist(List.of(entry(0)), 6);
+        assertThat(queueIds()).containsExactly(ids.get(0), ids.get(3), ids.get(1), ids.get(2), ids.get(5), ids.get(4));
+    }
+
+    @Test
+    void removeAllFromPlaylistDeletesRunsAndSingleEntries() throws Exception {
+        List<Integer> ids = queueIds(8);
+
+        List<MpdCommandResult> results = mpdService.removeAllFromPlaylist(
+                List.of(entry(1), entry(2), entry(3), entry(5), entry(7)));
+
+        // One delete for the run 1-3, one deleteid each for 5 and 7
+        assertThat(results).hasSize(3).allMatch(MpdCommandResult::isSuccess);
+        assertThat(queueIds()).containsExactly(ids.get(0), ids.get(4), ids.get(6));
+    }
+
+    private List<Integer> queueIds(int length) throws Exception {
+        mpdService.addAllToPlaylist(library.subList(0, length));
+        return queueIds();
+    }
+
+    private List<Integer> queueIds() throws Exception {
+        return mpdService.getQueueSnapshot().entries().stream().map(MpdQueueEntry::id).toList();
+    }
+
+    private MpdQueueEntry entry(int position) throws Exception {
+        return mpdService.getQueueSnapshot().entry(position);
+    }
+
+    private static List<String> files(List<MPDSong> songs) {
+        return songs.stream().map(MPDSong::getFile).toList();
+    }
+
+    private static String parentOf(String file) {
+        return file.substring(0, file.lastIndexOf('/'));
+    }
+
+}
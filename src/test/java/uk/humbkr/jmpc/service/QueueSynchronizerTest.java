@@ -0,0 +1,97 @@
+package uk.humbkr.jmpc.service;
+
+import org.bff.javampd.song.MPDSong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.humbkr.jmpc.fake.FakeMpdServer;
+import uk.humbkr.jmpc.fake.SyntheticLibrary;
+import uk.humbkr.jmpc.mpd.MpdQueueEntry;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueSynchronizerTest {
+
+    private final List<MPDSong> library = SyntheticLibrary.generate(200);
+
+    private FakeMpdServer server;
+
+    private MpdService mpdService;
+
+    private QueueSynchronizer synchronizer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeMpdServer.start(0, library, Duration.ZERO, 0);
+        mpdService = FakeMpd.connect(server);
+        synchronizer = new QueueSynchronizer(mpdService);
+        mpdService.addAllToPlaylist(library.subList(0, 10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mpdService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void synchronizeWithoutChangesKeepsTheSnapshot() throws Exception {
+        QueueSnapshot current = synchronizer.load().snapshot();
+
+        QueueUpdate update = synchronizer.synchronize(current);
+
+        assertThat(update.snapshot()).isSameAs(current);
+        assertThat(update.full()).isFalse();
+        assertThat(update.changed()).isEmpty();
+    }
+
+    @Test
+    void synchronizeFollowsMovesAdditionsAndRemovals() throws Exception {
+        QueueSnapshot current = synchronizer.load().snapshot();
+
+        mpdService.moveInPlaylist(List.of(current.entry(7), current.entry(8)), 1);
+        mpdService.removeFromPlaylist(current.entry(3).id());
+        mpdService.addAllToPlaylist(library.subList(50, 52));
+        QueueUpdate update = synchronizer.synchronize(current);
+
+        assertThat(update.full()).isFalse();
+        assertThat(describe(update.snapshot())).isEqualTo(describe(mpdService.getQueueSnapshot()));
+    }
+
+    @Test
+    void synchronizeRefetchesSongsRetaggedInPlace() throws Exception {
+        QueueSnapshot current = synchronizer.load().snapshot();
+        MpdQueueEntry retagged = current.entry(4);
+
+        server.updateSong(FakeMpd.retitled(retagged.song(), "Retagged"));
+        QueueUpdate update = synchronizer.synchronize(current);
+
+        // Same id at the same position, so only the tags tell the change
+        assertThat(update.snapshot().entry(4).id()).isEqualTo(retagged.id());
+        assertThat(update.snapshot().entry(4).song().getTitle()).isEqualTo("Retagged");
+        assertThat(update.changed()).extracting(MpdQueueEntry::position).containsExactly(4);
+        assertThat(describe(update.snapshot())).isEqualTo(describe(mpdService.getQueueSnapshot()));
+    }
+
+    @Test
+    void synchronizeFromAnUnknownVersionLoadsTheWholeQueue() throws Exception {
+        QueueUpdate update = synchronizer.synchronize(QueueSnapshot.EMPTY);
+
+        assertThat(update.full()).isTrue();
+        assertThat(update.snapshot().length()).isEqualTo(10);
+    }
+
+    /**
+     * Position, id and tags of every entry, as MPDSong has no value equality to rely on.
+     */
+    private static List<String> describe(QueueSnapshot snapshot) {
+        return snapshot.entries().stream()
+                .map(entry -> entry.position() + " " + entry.id() + " " + entry.song().getFile() + " "
+                        + entry.song().getTitle() + " " + entry.song().getArtistName())
+                .toList();
+    }
+
+}